@@ -10,6 +10,8 @@ set( JAVA_OUTPUT_DIR "${PROJECT_SOURCE_DIR}/bin" )
 # case of multiple source directories
 set( _${PROJECT_NAME}_msgs_generated FALSE )
 set( _${PROJECT_NAME}_srvs_generated FALSE )
+# Targets that compile the java source directories of the package
+set( _java_compile_targets "" )
 
 # Add all the jar files under a given directory to the classpath
 macro(add_jar_dir _jardir)
@@ -84,8 +86,46 @@ macro(add_java_source_dir _srcdir)
     add_java_source_dir_internal(${_targetname} ${_cp})
   endforeach(_cp)
   add_java_source_dir_internal(${_targetname} ${_srcdir})
+  list(APPEND _java_compile_targets ${_targetname})
 endmacro(add_java_source_dir)
 
+# Compile the java tests in _srcdir against the classes of the package into
+# ${PROJECT_BINARY_DIR}/test_classes, which is not part of the exported
+# classpath, and run _class as test_${_testname}. The tests are compiled by
+# the 'tests' target and run by the 'test' target.
+macro(add_java_test _testname _srcdir _class)
+  set(_test_output_dir ${PROJECT_BINARY_DIR}/test_classes)
+  file(GLOB_RECURSE _java_rel_test_files
+    RELATIVE ${_srcdir}
+    ${_srcdir}/*.java)
+  set(_java_test_files "")
+  set(_java_test_output_files "")
+  foreach(_src ${_java_rel_test_files})
+    string(REPLACE ".java" ".class" _dest ${_src})
+    list(APPEND _java_test_files ${_srcdir}/${_src})
+    list(APPEND _java_test_output_files ${_test_output_dir}/${_dest})
+  endforeach(_src)
+
+  string(REPLACE ";" ":" _javac_classpath_param "${JAVA_OUTPUT_DIR};${_java_classpath}")
+  add_custom_command(
+    OUTPUT ${_java_test_output_files}
+    COMMAND ${CMAKE_COMMAND} -E make_directory ${_test_output_dir}
+    COMMAND ${JAVA_COMPILE} -source 1.5 -classpath "${_javac_classpath_param}:$ENV{ROSJAVA_AUX_CLASSPATH}" -d ${_test_output_dir} ${_java_test_files}
+    WORKING_DIRECTORY ${_srcdir}
+    DEPENDS ${_java_test_files})
+  add_custom_target(${_testname} DEPENDS ${_java_test_output_files})
+  foreach(_target ${_java_compile_targets})
+    add_dependencies(${_testname} ${_target})
+  endforeach(_target)
+  rosbuild_declare_test(${_testname})
+
+  string(REPLACE ";" ":" _java_test_classpath_param "${_test_output_dir};${JAVA_OUTPUT_DIR};${_java_runtime_classpath};${rosjava_jni_PACKAGE_PATH}/bin")
+  add_custom_target(test_${_testname}
+    COMMAND ${JAVA_RUNTIME} -classpath "${_java_test_classpath_param}:$ENV{ROSJAVA_AUX_CLASSPATH}" ${_class})
+  add_dependencies(test_${_testname} ${_testname})
+  add_dependencies(test test_${_testname})
+endmacro(add_java_test)
+
 # Compile java files in _srcdir and put the compiled files in
 # _destdir.
 macro(add_java_source_dir_internal _targetname _srcdir)
@@ -228,6 +268,8 @@ macro(rospack_add_java_executable _exe_name _class)
 endmacro(rospack_add_java_executable)
 
 # Message-generation support.
+# Generator options (e.g. --lazy, see genmsg_java.py) can be passed by setting
+# ROSJAVA_GENMSG_FLAGS before calling genmsg_java() or gensrv_java().
 macro(genmsg_java_pkg pkg output_dir)
   rosjava_rosbuild_get_msgs(${pkg} _msglist)
   rosbuild_find_ros_package(${pkg})
@@ -244,7 +286,7 @@ macro(genmsg_java_pkg pkg output_dir)
   
     # Add the rule to build the .h the .msg
     add_custom_command(OUTPUT ${_output_java}
-                       COMMAND ${genmsg_java_exe} ${_input} ${output_dir}
+                       COMMAND ${genmsg_java_exe} ${ROSJAVA_GENMSG_FLAGS} ${_input} ${output_dir}
                        DEPENDS ${_input} ${genmsg_java_exe} ${${pkg}_${_msg}_GENDEPS} ${ROS_MANIFEST_LIST})
     list(APPEND _autogen ${_output_java})
   endforeach(_msg)
@@ -276,7 +318,7 @@ macro(gensrv_java_pkg pkg output_dir)
   
     # Add the rule to build the .java from the .srv
     add_custom_command(OUTPUT ${_output_java} 
-                       COMMAND ${gensrv_java_exe} ${_input} ${output_dir}
+                       COMMAND ${gensrv_java_exe} ${ROSJAVA_GENMSG_FLAGS} ${_input} ${output_dir}
                        DEPENDS ${_input} ${gensrv_java_exe} ${genmsg_java_exe} ${${pkg}_${_srv}_GENDEPS} ${ROS_MANIFEST_LIST})
     list(APPEND _autogen ${_output_java})
   endforeach(_srv)
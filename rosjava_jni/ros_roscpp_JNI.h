@@ -72,6 +72,21 @@ JNIEXPORT void JNICALL Java_ros_roscpp_JNI_spin
 JNIEXPORT void JNICALL Java_ros_roscpp_JNI_spinOnce
   (JNIEnv * env, jclass __jni);
 
+JNIEXPORT void JNICALL Java_ros_roscpp_JNI_spinMultiThreaded
+  (JNIEnv * env, jclass __jni, jint threadCount);
+
+JNIEXPORT jlong JNICALL Java_ros_roscpp_JNI_createAsyncSpinner
+  (JNIEnv * env, jclass __jni, jint threadCount);
+
+JNIEXPORT void JNICALL Java_ros_roscpp_JNI_startAsyncSpinner
+  (JNIEnv * env, jclass __jni, jlong cppSpinner);
+
+JNIEXPORT void JNICALL Java_ros_roscpp_JNI_stopAsyncSpinner
+  (JNIEnv * env, jclass __jni, jlong cppSpinner);
+
+JNIEXPORT void JNICALL Java_ros_roscpp_JNI_deleteAsyncSpinner
+  (JNIEnv * env, jclass __jni, jlong cppSpinner);
+
 
 JNIEXPORT jboolean JNICALL Java_ros_roscpp_JNI_checkMaster
   (JNIEnv * env, jclass __jni, jlong cppHandle);
@@ -125,6 +140,9 @@ JNIEXPORT void JNICALL Java_ros_roscpp_JNI_logFatal
 JNIEXPORT jobject JNICALL Java_ros_roscpp_JNI_now
   (JNIEnv * env, jclass __jni);
 
+JNIEXPORT jlong JNICALL Java_ros_roscpp_JNI_nowNsecs
+  (JNIEnv * env, jclass __jni);
+
 JNIEXPORT jobjectArray JNICALL Java_ros_roscpp_JNI_getSubscribedTopics
   (JNIEnv * env, jclass __jni, jlong cppHandle);
 
@@ -179,7 +197,7 @@ JNIEXPORT void JNICALL Java_ros_roscpp_JNI_setParam__JLjava_lang_String_2Ljava_l
  ************************************************************/
 
 JNIEXPORT jlong JNICALL Java_ros_roscpp_JNI_createSubCallback
-  (JNIEnv * env, jclass __jni, jobject jcallback, jobject messageTemplate);
+  (JNIEnv * env, jclass __jni, jobject jcallback, jobject messageTemplate, jobject jmask);
 
 JNIEXPORT void JNICALL Java_ros_roscpp_JNI_deleteSubCallback
   (JNIEnv * env, jclass __jni, jlong cppCallback);
@@ -194,6 +212,27 @@ JNIEXPORT jboolean JNICALL Java_ros_roscpp_JNI_isSubscriberValid
 JNIEXPORT void JNICALL Java_ros_roscpp_JNI_shutdownSubscriber
   (JNIEnv * env, jclass __jni, jlong cppSubscriber);
 
+JNIEXPORT jlong JNICALL Java_ros_roscpp_JNI_subscribeRaw
+  (JNIEnv * env, jclass __jni, jlong cppHandle, jstring jtopic, jstring jdatatype, jstring jmd5, jobject jsubscriber, jint queueSize);
+
+JNIEXPORT jlong JNICALL Java_ros_roscpp_JNI_createBatchQueue
+  (JNIEnv * env, jclass __jni, jobject jring, jint maxMessages, jlong maxLatencyMicros);
+
+JNIEXPORT void JNICALL Java_ros_roscpp_JNI_deleteBatchQueue
+  (JNIEnv * env, jclass __jni, jlong cppQueue);
+
+JNIEXPORT jlong JNICALL Java_ros_roscpp_JNI_subscribeBatched
+  (JNIEnv * env, jclass __jni, jlong cppHandle, jstring jtopic, jstring jdatatype, jstring jmd5, jlong cppQueue, jint queueSize);
+
+JNIEXPORT jlong JNICALL Java_ros_roscpp_JNI_awaitBatch
+  (JNIEnv * env, jclass __jni, jlong cppQueue, jlong consumed);
+
+JNIEXPORT void JNICALL Java_ros_roscpp_JNI_stopBatchQueue
+  (JNIEnv * env, jclass __jni, jlong cppQueue);
+
+JNIEXPORT jlong JNICALL Java_ros_roscpp_JNI_getBatchDropCount
+  (JNIEnv * env, jclass __jni, jlong cppQueue);
+
 
 
 /************************************************************
@@ -209,6 +248,18 @@ JNIEXPORT jint JNICALL Java_ros_roscpp_JNI_getNumSubscribers
 JNIEXPORT void JNICALL Java_ros_roscpp_JNI_publish
   (JNIEnv * env, jclass __jni, jlong cppPublisher, jobject jmessage);
 
+JNIEXPORT jboolean JNICALL Java_ros_roscpp_JNI_supportsRawMessages
+  (JNIEnv * env, jclass __jni);
+
+JNIEXPORT jlong JNICALL Java_ros_roscpp_JNI_advertiseRaw
+  (JNIEnv * env, jclass __jni, jlong cppHandle, jstring jtopic, jstring jdatatype, jstring jmd5, jstring jdefinition, jint queueSize, jboolean latch);
+
+JNIEXPORT void JNICALL Java_ros_roscpp_JNI_publishRaw
+  (JNIEnv * env, jclass __jni, jlong cppPublisher, jobject jbuffer, jint offset, jint length);
+
+JNIEXPORT void JNICALL Java_ros_roscpp_JNI_publishRawArray
+  (JNIEnv * env, jclass __jni, jlong cppPublisher, jbyteArray jdata, jint offset, jint length);
+
 JNIEXPORT jboolean JNICALL Java_ros_roscpp_JNI_isPublisherValid
   (JNIEnv * env, jclass __jni, jlong cppPublisher);
 
@@ -44,6 +44,7 @@
 
 
 #include <cstdio>
+#include <cstring>
 #include <boost/thread.hpp>
 #include <boost/thread/mutex.hpp>
 #include <boost/thread/condition.hpp>
@@ -56,6 +57,7 @@
 #include <ros/master.h>
 #include <ros/this_node.h>
 #include <ros/node_handle.h>
+#include <ros/spinner.h>
 #include <ros/service.h>
 #include <rospack/rospack.h>
 
@@ -186,6 +188,7 @@ static jclass jMessage;
 static jclass jSubscriberCallback;
 static jclass jServiceCallback;
 static jclass jByteBuffer;
+static jclass jRawSubscriber;
 
 static jmethodID jTimeCtor;
 
@@ -197,8 +200,10 @@ static jmethodID jMessageGetMessageDefinition;
 static jmethodID jMessageSerializationLength;
 static jmethodID jMessageSerialize;
 static jmethodID jMessageDeserialize;
+static jmethodID jMessageDeserializeMasked;
 static jmethodID jSubscriberCallbackCall;
 static jmethodID jServiceCallbackCall;
+static jmethodID jRawSubscriberDeliver;
 static jmethodID jByteBufferOrder;
 
 static jobject jByteOrderLittleEndian;
@@ -237,6 +242,7 @@ JNIEXPORT void JNICALL Java_ros_roscpp_JNI_init
 	if (!cacheClass(env, jSubscriberCallback, "ros/Subscriber$Callback")) return; // Exception thrown
 	if (!cacheClass(env, jServiceCallback, "ros/ServiceServer$Callback")) return; // Exception thrown
 	if (!cacheClass(env, jByteBuffer, "java/nio/ByteBuffer")) return; // Exception thrown
+	if (!cacheClass(env, jRawSubscriber, "ros/roscpp/CppRawSubscriber")) return; // Exception thrown
 
 	if (!cacheMethod(env, jTimeCtor, jTime, "<init>", "(II)V")) return; // Exception thrown
 
@@ -248,8 +254,10 @@ JNIEXPORT void JNICALL Java_ros_roscpp_JNI_init
 	if (!cacheMethod(env, jMessageSerializationLength, jMessage, "serializationLength", "()I")) return; // Exception thrown
 	if (!cacheMethod(env, jMessageSerialize, jMessage, "serialize", "(Ljava/nio/ByteBuffer;I)V")) return; // Exception thrown
 	if (!cacheMethod(env, jMessageDeserialize, jMessage, "deserialize", "(Ljava/nio/ByteBuffer;)V")) return; // Exception thrown
+	if (!cacheMethod(env, jMessageDeserializeMasked, jMessage, "deserialize", "(Ljava/nio/ByteBuffer;Lros/communication/FieldMask;)V")) return; // Exception thrown
 	if (!cacheMethod(env, jSubscriberCallbackCall, jSubscriberCallback, "call", "(Lros/communication/Message;)V")) return; // Exception thrown
 	if (!cacheMethod(env, jServiceCallbackCall, jServiceCallback, "call", "(Lros/communication/Message;)Lros/communication/Message;")) return; // Exception thrown
+	if (!cacheMethod(env, jRawSubscriberDeliver, jRawSubscriber, "deliver", "(Ljava/nio/ByteBuffer;[Ljava/lang/String;)V")) return; // Exception thrown
 	if (!cacheMethod(env, jByteBufferOrder, jByteBuffer, "order", "(Ljava/nio/ByteOrder;)Ljava/nio/ByteBuffer;")) return; // Exception thrown
 
 	jclass jByteOrder = env->FindClass("java/nio/ByteOrder");
@@ -335,6 +343,40 @@ JNIEXPORT void JNICALL Java_ros_roscpp_JNI_spinOnce
 	ros::spinOnce();
 }
 
+JNIEXPORT void JNICALL Java_ros_roscpp_JNI_spinMultiThreaded
+  (JNIEnv * env, jclass __jni, jint threadCount)
+{
+	ros::MultiThreadedSpinner spinner(threadCount);
+	ros::spin(spinner);
+}
+
+JNIEXPORT jlong JNICALL Java_ros_roscpp_JNI_createAsyncSpinner
+  (JNIEnv * env, jclass __jni, jint threadCount)
+{
+	return (jlong) new ros::AsyncSpinner(threadCount);
+}
+
+JNIEXPORT void JNICALL Java_ros_roscpp_JNI_startAsyncSpinner
+  (JNIEnv * env, jclass __jni, jlong cppSpinner)
+{
+	ros::AsyncSpinner *spinner = (ros::AsyncSpinner *) cppSpinner;
+	spinner->start();
+}
+
+JNIEXPORT void JNICALL Java_ros_roscpp_JNI_stopAsyncSpinner
+  (JNIEnv * env, jclass __jni, jlong cppSpinner)
+{
+	ros::AsyncSpinner *spinner = (ros::AsyncSpinner *) cppSpinner;
+	spinner->stop();
+}
+
+JNIEXPORT void JNICALL Java_ros_roscpp_JNI_deleteAsyncSpinner
+  (JNIEnv * env, jclass __jni, jlong cppSpinner)
+{
+	ros::AsyncSpinner *spinner = (ros::AsyncSpinner *) cppSpinner;
+	delete spinner; // stops it if it is running
+}
+
 
 
 
@@ -457,6 +499,11 @@ JNIEXPORT jobject JNICALL Java_ros_roscpp_JNI_now
     return ret;
 }
 
+JNIEXPORT jlong JNICALL Java_ros_roscpp_JNI_nowNsecs
+  (JNIEnv * env, jclass __jni) {
+    return ros::Time::now().toNSec();
+}
+
 JNIEXPORT jobjectArray JNICALL Java_ros_roscpp_JNI_getSubscribedTopics
   (JNIEnv * env, jclass __jni, jlong cppHandle)
 {
@@ -624,8 +671,9 @@ class JavaMessage
 {
 public:
     jobject _message;
+    jobject _mask; // FieldMask used by deserialize, or NULL to decode all fields (the subscription owns the reference)
 
-    JavaMessage(jobject message) : _message(getJNIEnv()->NewGlobalRef(message)) {}
+    JavaMessage(jobject message) : _message(getJNIEnv()->NewGlobalRef(message)), _mask(NULL) {}
 
     JavaMessage(const JavaMessage& r)
     {
@@ -634,6 +682,7 @@ public:
         _message = env->CallObjectMethod(r._message,jMessageClone);
        	MY_ROS_ASSERT(_message && dieOnException(env));
        	_message = env->NewGlobalRef(_message);
+       	_mask = r._mask;
     }
 
     virtual ~JavaMessage() {
@@ -717,12 +766,45 @@ public:
        	MY_ROS_ASSERT(bb && dieOnException(env));
        	bb = env->CallObjectMethod(bb, jByteBufferOrder, jByteOrderLittleEndian);
        	MY_ROS_ASSERT(bb && dieOnException(env));
-       	env->CallObjectMethod(_message, jMessageDeserialize, bb);
+       	if (_mask) env->CallVoidMethod(_message, jMessageDeserializeMasked, bb, _mask);
+       	else env->CallObjectMethod(_message, jMessageDeserialize, bb);
     	dieOnException(env);
        	return readPtr + sz;
     }
 };
 
+
+/************************************************************
+ *   Raw (serialized) messages
+ ************************************************************/
+
+// Bytes of a received message, copied out of the receive buffer without decoding them
+class RawMessage
+{
+public:
+    std::vector<uint8_t> _data;
+};
+
+// Bytes of a message to publish, which are owned by the caller. The type is not known here (only the
+// publisher was advertised with it), so it is reported as "*", which roscpp accepts for any publisher.
+class RawPublication
+{
+public:
+    const uint8_t *_data;
+    uint32_t _length;
+
+    RawPublication(const uint8_t *data, uint32_t length) : _data(data), _length(length) {}
+
+    const string &__getDataType() const { return any(); }
+    const string &__getMD5Sum() const { return any(); }
+    const string &__getMessageDefinition() const { return any(); }
+
+    static const string &any() {
+        static const string s("*");
+        return s;
+    }
+};
+
 namespace ros
 {
 
@@ -759,6 +841,36 @@ struct Serializer<JavaMessage>
   }
 };
 
+template<>
+struct Serializer<RawMessage>
+{
+  template<typename Stream>
+  inline static void read(Stream& stream, boost::call_traits<RawMessage>::reference t)
+  {
+    t._data.assign(stream.getData(), stream.getData() + stream.getLength());
+  }
+
+  inline static uint32_t serializedLength(boost::call_traits<RawMessage>::param_type t)
+  {
+    return t._data.size();
+  }
+};
+
+template<>
+struct Serializer<RawPublication>
+{
+  template<typename Stream>
+  inline static void write(Stream& stream, boost::call_traits<RawPublication>::param_type t)
+  {
+    memcpy(stream.advance(t._length), t._data, t._length);
+  }
+
+  inline static uint32_t serializedLength(boost::call_traits<RawPublication>::param_type t)
+  {
+    return t._length;
+  }
+};
+
 }
 }
 
@@ -766,22 +878,34 @@ struct Serializer<JavaMessage>
  *   Subscriptions
  ************************************************************/
 
+// Global reference to the field mask of a subscription, or NULL if it decodes all fields
+static jobject createMaskRef(jobject mask) {
+    return mask ? getJNIEnv()->NewGlobalRef(mask) : NULL;
+}
+
 #if ROS_NEW_SERIALIZATION_API
 class SubscriptionMessage
 {
 public:
     jobject _scb;
+    jobject _mask;
     JavaMessage _msg;
     string md5, datatype;
 
-    SubscriptionMessage(jobject scb, jobject tmpl) : _scb(getJNIEnv()->NewGlobalRef(scb)), _msg(tmpl) {
+    SubscriptionMessage(jobject scb, jobject tmpl, jobject mask) : _scb(getJNIEnv()->NewGlobalRef(scb)), _mask(createMaskRef(mask)), _msg(tmpl) {
+        _msg._mask = _mask; // inherited by the clones of the template
         md5 = _msg.__getMD5Sum();
         datatype = _msg.__getDataType();
     }
 
-    ~SubscriptionMessage() { getJNIEnv()->DeleteGlobalRef(_scb); }
+    ~SubscriptionMessage() {
+        getJNIEnv()->DeleteGlobalRef(_scb);
+        if (_mask) getJNIEnv()->DeleteGlobalRef(_mask);
+    }
 
-    boost::shared_ptr<JavaMessage> create() { return boost::shared_ptr<JavaMessage>(new JavaMessage(_msg)); }
+    boost::shared_ptr<JavaMessage> create() {
+        return boost::shared_ptr<JavaMessage>(new JavaMessage(_msg));
+    }
     void callback(const boost::shared_ptr<JavaMessage const>& msg)
     {
       getJNIEnv()->CallVoidMethod(_scb, jSubscriberCallbackCall, msg->_message);
@@ -794,16 +918,23 @@ public:
 class JavaSubscriptionMessageHelper : public ros::SubscriptionMessageHelper {
 public:
 	jobject _scb;
+	jobject _mask;
 	JavaMessage _msg;
 	string md5, datatype;
 
-	JavaSubscriptionMessageHelper(jobject scb, jobject tmpl) : _scb(getJNIEnv()->NewGlobalRef(scb)), _msg(tmpl) {
+	JavaSubscriptionMessageHelper(jobject scb, jobject tmpl, jobject mask) : _scb(getJNIEnv()->NewGlobalRef(scb)), _mask(createMaskRef(mask)), _msg(tmpl) {
+		_msg._mask = _mask; // inherited by the clones of the template
 		md5 = _msg.__getMD5Sum();
 		datatype = _msg.__getDataType();
 	}
-	~JavaSubscriptionMessageHelper() { getJNIEnv()->DeleteGlobalRef(_scb); }
+	~JavaSubscriptionMessageHelper() {
+		getJNIEnv()->DeleteGlobalRef(_scb);
+		if (_mask) getJNIEnv()->DeleteGlobalRef(_mask);
+	}
 
-	virtual MessagePtr create() { return boost::shared_ptr<Message>(new JavaMessage(_msg)); }
+	virtual MessagePtr create() {
+		return boost::shared_ptr<Message>(new JavaMessage(_msg));
+	}
 
 	virtual std::string getMD5Sum() { return md5; }
 	virtual std::string getDataType() { return datatype; }
@@ -815,12 +946,12 @@ public:
 #endif
 
 JNIEXPORT jlong JNICALL Java_ros_roscpp_JNI_createSubCallback
-  (JNIEnv * env, jclass __jni, jobject jcallback, jobject messageTemplate)
+  (JNIEnv * env, jclass __jni, jobject jcallback, jobject messageTemplate, jobject jmask)
 {
 #if ROS_NEW_SERIALIZATION_API
-    return (jlong) new boost::shared_ptr<SubscriptionMessage>(new SubscriptionMessage(jcallback, messageTemplate));
+    return (jlong) new boost::shared_ptr<SubscriptionMessage>(new SubscriptionMessage(jcallback, messageTemplate, jmask));
 #else
-	return (jlong) new boost::shared_ptr<JavaSubscriptionMessageHelper>(new JavaSubscriptionMessageHelper(jcallback, messageTemplate));
+	return (jlong) new boost::shared_ptr<JavaSubscriptionMessageHelper>(new JavaSubscriptionMessageHelper(jcallback, messageTemplate, jmask));
 #endif
 }
 
@@ -870,6 +1001,227 @@ JNIEXPORT void JNICALL Java_ros_roscpp_JNI_shutdownSubscriber
 	delete subscriber;
 }
 
+#if ROS_NEW_SERIALIZATION_API
+// Hands received messages to a CppRawSubscriber as a direct buffer over the bytes, plus the connection header
+class RawSubscription
+{
+public:
+    jobject _subscriber;
+    boost::mutex _headerMutex;
+    boost::shared_ptr<M_string> _header; // connection header that _jheader was built from
+    jobjectArray _jheader;
+
+    RawSubscription(jobject subscriber) : _subscriber(getJNIEnv()->NewGlobalRef(subscriber)), _jheader(NULL) {}
+
+    ~RawSubscription() {
+        getJNIEnv()->DeleteGlobalRef(_subscriber);
+        if (_jheader) getJNIEnv()->DeleteGlobalRef(_jheader);
+    }
+
+    // Header as key/value pairs, which is only rebuilt when messages come in on another connection
+    jobjectArray headerArray(JNIEnv * env, const boost::shared_ptr<M_string> &header) {
+        boost::mutex::scoped_lock lock(_headerMutex);
+        if (_jheader == NULL || header != _header) {
+            int n = header ? header->size() : 0;
+            jobjectArray arr = env->NewObjectArray(2 * n, jString, NULL);
+            MY_ROS_ASSERT(arr && dieOnException(env));
+            int i = 0;
+            if (header) {
+                for (M_string::const_iterator it = header->begin(); it != header->end(); ++it) {
+                    jstring key = makeString(env, it->first), value = makeString(env, it->second);
+                    env->SetObjectArrayElement(arr, i++, key);
+                    env->SetObjectArrayElement(arr, i++, value);
+                    env->DeleteLocalRef(key);
+                    env->DeleteLocalRef(value);
+                }
+            }
+            if (_jheader) env->DeleteGlobalRef(_jheader);
+            _jheader = (jobjectArray) env->NewGlobalRef(arr);
+            env->DeleteLocalRef(arr);
+            _header = header;
+        }
+        return (jobjectArray) env->NewLocalRef(_jheader);
+    }
+
+    void callback(const MessageEvent<RawMessage const>& event) {
+        static uint8_t empty; // direct buffers need an address, even when they have no bytes
+        JNIEnv * env = getJNIEnv();
+        const std::vector<uint8_t> &data = event.getConstMessage()->_data;
+        jobjectArray header = headerArray(env, event.getConnectionHeaderPtr());
+        jobject bb = env->NewDirectByteBuffer(data.empty() ? &empty : (void *) &data[0], data.size());
+        MY_ROS_ASSERT(bb && dieOnException(env));
+        env->CallVoidMethod(_subscriber, jRawSubscriberDeliver, bb, header);
+        env->DeleteLocalRef(bb);
+        env->DeleteLocalRef(header);
+    }
+};
+#endif
+
+JNIEXPORT jlong JNICALL Java_ros_roscpp_JNI_subscribeRaw
+  (JNIEnv * env, jclass __jni, jlong cppHandle, jstring jtopic, jstring jdatatype, jstring jmd5, jobject jsubscriber, jint queueSize)
+{
+#if ROS_NEW_SERIALIZATION_API
+	NodeHandle *handle = (NodeHandle *) cppHandle;
+	boost::shared_ptr<RawSubscription> raw(new RawSubscription(jsubscriber));
+	SubscribeOptions so(getString(env, jtopic), queueSize, getString(env, jmd5), getString(env, jdatatype));
+	so.helper.reset(new SubscriptionCallbackHelperT<const MessageEvent<RawMessage const>&>(boost::bind(&RawSubscription::callback, raw, _1)));
+
+	Subscriber subscriber = handle->subscribe(so);
+	if (subscriber) return (jlong) new Subscriber(subscriber);
+#endif
+	return 0; // raw subscriptions need the new roscpp serialization API
+}
+
+// Ring buffer into which received messages are copied by the spinner, and from which Java takes them in
+// batches. Records are a native-endian int32 length followed by the message, padded to 4 bytes; a length
+// of -1 marks the end of the ring, after which the next record starts at the beginning.
+// Positions only ever grow: the bytes from _readPos up to _writePos are owned by Java.
+class BatchQueue
+{
+public:
+    jobject _buffer;
+    uint8_t *_ring;
+    uint64_t _capacity;
+    uint32_t _maxMessages;
+    boost::posix_time::time_duration _maxLatency;
+
+    boost::mutex _mutex;
+    boost::condition _ready;
+    uint64_t _readPos, _writePos;
+    uint32_t _pending;             // messages written since the last batch was handed out
+    boost::system_time _firstPending; // arrival of the oldest of these
+    bool _stopped;
+    uint64_t _dropped;             // messages that did not fit in the ring
+    bool _warnedOversized;
+
+    BatchQueue(JNIEnv * env, jobject buffer, uint32_t maxMessages, int64_t maxLatencyMicros) :
+        _buffer(env->NewGlobalRef(buffer)),
+        _ring((uint8_t *) env->GetDirectBufferAddress(buffer)),
+        _capacity(env->GetDirectBufferCapacity(buffer)),
+        _maxMessages(maxMessages), _maxLatency(boost::posix_time::microseconds(maxLatencyMicros)),
+        _readPos(0), _writePos(0), _pending(0), _stopped(false), _dropped(0), _warnedOversized(false) {
+        MY_ROS_ASSERT(_ring != NULL && _capacity % 4 == 0);
+    }
+
+    ~BatchQueue() {
+        getJNIEnv()->DeleteGlobalRef(_buffer);
+    }
+
+    void push(const boost::shared_ptr<RawMessage const>& msg) {
+        const std::vector<uint8_t> &data = msg->_data;
+        uint64_t recordLen = 4 + ((data.size() + 3) & ~3);
+        boost::mutex::scoped_lock lock(_mutex);
+        if (_stopped) return;
+        if (recordLen > _capacity) {
+            // can never fit: say so once, rather than dropping every such message silently
+            _dropped++;
+            if (!_warnedOversized) {
+                ROS_WARN("Dropping message of %u bytes, which does not fit in a batch buffer of %u bytes",
+                         (unsigned) data.size(), (unsigned) _capacity);
+                _warnedOversized = true;
+            }
+            return;
+        }
+        uint64_t index = _writePos % _capacity;
+        uint64_t skip = index + recordLen > _capacity ? _capacity - index : 0;
+        if (_writePos + skip + recordLen - _readPos > _capacity) { // Java is behind: drop, like a full queue
+            _dropped++;
+            return;
+        }
+        if (skip) {
+            int32_t end = -1;
+            memcpy(_ring + index, &end, 4);
+            _writePos += skip;
+            index = 0;
+        }
+        int32_t len = data.size();
+        memcpy(_ring + index, &len, 4);
+        if (len) memcpy(_ring + index + 4, &data[0], len);
+        _writePos += recordLen;
+        if (_pending++ == 0) _firstPending = boost::get_system_time();
+        if (_pending == 1 || _pending >= _maxMessages) _ready.notify_all();
+    }
+
+    // Gives back the bytes up to consumed, and waits for the next batch. Returns the position up to which
+    // it reaches, or -1 once the queue is stopped.
+    int64_t await(uint64_t consumed) {
+        boost::mutex::scoped_lock lock(_mutex);
+        _readPos = consumed;
+        while (!_stopped && _pending < _maxMessages) {
+            if (_pending == 0) {
+                _ready.wait(lock);
+                continue;
+            }
+            boost::system_time deadline = _firstPending + _maxLatency;
+            if (boost::get_system_time() >= deadline) break;
+            _ready.timed_wait(lock, deadline);
+        }
+        if (_stopped) return -1;
+        _pending = 0;
+        return _writePos;
+    }
+
+    uint64_t dropped() {
+        boost::mutex::scoped_lock lock(_mutex);
+        return _dropped;
+    }
+
+    void stop() {
+        boost::mutex::scoped_lock lock(_mutex);
+        _stopped = true;
+        _ready.notify_all();
+    }
+};
+
+JNIEXPORT jlong JNICALL Java_ros_roscpp_JNI_createBatchQueue
+  (JNIEnv * env, jclass __jni, jobject jring, jint maxMessages, jlong maxLatencyMicros)
+{
+	return (jlong) new boost::shared_ptr<BatchQueue>(new BatchQueue(env, jring, maxMessages, maxLatencyMicros));
+}
+
+JNIEXPORT void JNICALL Java_ros_roscpp_JNI_deleteBatchQueue
+  (JNIEnv * env, jclass __jni, jlong cppQueue)
+{
+	boost::shared_ptr<BatchQueue> *queue = (boost::shared_ptr<BatchQueue> *) cppQueue;
+	delete queue;
+}
+
+JNIEXPORT jlong JNICALL Java_ros_roscpp_JNI_subscribeBatched
+  (JNIEnv * env, jclass __jni, jlong cppHandle, jstring jtopic, jstring jdatatype, jstring jmd5, jlong cppQueue, jint queueSize)
+{
+#if ROS_NEW_SERIALIZATION_API
+	NodeHandle *handle = (NodeHandle *) cppHandle;
+	boost::shared_ptr<BatchQueue> *queue = (boost::shared_ptr<BatchQueue> *) cppQueue;
+	SubscribeOptions so(getString(env, jtopic), queueSize, getString(env, jmd5), getString(env, jdatatype));
+	so.helper.reset(new SubscriptionCallbackHelperT<const boost::shared_ptr<RawMessage const>&>(boost::bind(&BatchQueue::push, *queue, _1)));
+
+	Subscriber subscriber = handle->subscribe(so);
+	if (subscriber) return (jlong) new Subscriber(subscriber);
+#endif
+	return 0; // batched subscriptions need the new roscpp serialization API
+}
+
+JNIEXPORT jlong JNICALL Java_ros_roscpp_JNI_awaitBatch
+  (JNIEnv * env, jclass __jni, jlong cppQueue, jlong consumed)
+{
+	boost::shared_ptr<BatchQueue> *queue = (boost::shared_ptr<BatchQueue> *) cppQueue;
+	return (*queue)->await(consumed);
+}
+
+JNIEXPORT void JNICALL Java_ros_roscpp_JNI_stopBatchQueue
+  (JNIEnv * env, jclass __jni, jlong cppQueue)
+{
+	boost::shared_ptr<BatchQueue> *queue = (boost::shared_ptr<BatchQueue> *) cppQueue;
+	(*queue)->stop();
+}
+
+JNIEXPORT jlong JNICALL Java_ros_roscpp_JNI_getBatchDropCount
+  (JNIEnv * env, jclass __jni, jlong cppQueue)
+{
+	boost::shared_ptr<BatchQueue> *queue = (boost::shared_ptr<BatchQueue> *) cppQueue;
+	return (jlong) (*queue)->dropped();
+}
+
 
 
 /************************************************************
@@ -901,6 +1253,50 @@ JNIEXPORT void JNICALL Java_ros_roscpp_JNI_publish
 	publisher->publish(message);
 }
 
+JNIEXPORT jboolean JNICALL Java_ros_roscpp_JNI_supportsRawMessages
+  (JNIEnv * env, jclass __jni)
+{
+#if ROS_NEW_SERIALIZATION_API
+	return true;
+#else
+	return false;
+#endif
+}
+
+JNIEXPORT jlong JNICALL Java_ros_roscpp_JNI_advertiseRaw
+  (JNIEnv * env, jclass __jni, jlong cppHandle, jstring jtopic, jstring jdatatype, jstring jmd5, jstring jdefinition, jint queueSize, jboolean latch)
+{
+#if ROS_NEW_SERIALIZATION_API
+	NodeHandle *handle = (NodeHandle *) cppHandle;
+	AdvertiseOptions ao(getString(env, jtopic), queueSize, getString(env, jmd5), getString(env, jdatatype), getString(env, jdefinition));
+	ao.latch = latch;
+	Publisher publisher = handle->advertise(ao);
+	if (publisher) return (jlong) new Publisher(publisher);
+#endif
+	return 0; // raw publications need the new roscpp serialization API
+}
+
+JNIEXPORT void JNICALL Java_ros_roscpp_JNI_publishRaw
+  (JNIEnv * env, jclass __jni, jlong cppPublisher, jobject jbuffer, jint offset, jint length) {
+#if ROS_NEW_SERIALIZATION_API
+	Publisher *publisher = (Publisher *) cppPublisher;
+	uint8_t *data = (uint8_t *) env->GetDirectBufferAddress(jbuffer);
+	MY_ROS_ASSERT(data != NULL);
+	publisher->publish(RawPublication(data + offset, length));
+#endif
+}
+
+JNIEXPORT void JNICALL Java_ros_roscpp_JNI_publishRawArray
+  (JNIEnv * env, jclass __jni, jlong cppPublisher, jbyteArray jdata, jint offset, jint length) {
+#if ROS_NEW_SERIALIZATION_API
+	Publisher *publisher = (Publisher *) cppPublisher;
+	jbyte *data = env->GetByteArrayElements(jdata, NULL);
+	MY_ROS_ASSERT(data != NULL);
+	publisher->publish(RawPublication((uint8_t *) data + offset, length));
+	env->ReleaseByteArrayElements(jdata, data, JNI_ABORT);
+#endif
+}
+
 JNIEXPORT jboolean JNICALL Java_ros_roscpp_JNI_isPublisherValid
   (JNIEnv * env, jclass __jni, jlong cppPublisher)
 {
@@ -93,12 +93,63 @@ MSG_TYPE_TO_DESERIALIZATION_CODE = {
     'time': 'Serialization.readTime(%s)',
     'duration': 'Serialization.readDuration(%s)'}
 
+# Decoding of the builtin types that are objects, which reuses the current value (second argument) if possible
+MSG_TYPE_TO_REUSING_DESERIALIZATION_CODE = {
+    'string': 'Serialization.readString(%s, %s)',
+    'time': 'Serialization.readTime(%s, %s)',
+    'duration': 'Serialization.readDuration(%s, %s)'}
+
 BUILTIN_TYPE_SIZES = {'bool': 1, 'int8': 1, 'byte': 1, 'int16': 2, 'int32': 4, 'int64': 8,
                       'char': 1, 'uint8': 1, 'uint16': 2, 'uint32': 4, 'uint64': 8,
                       'float32': 4, 'float64': 8, 'time': 8, 'duration': 8}
 
+# Arrays of these types are copied in bulk through a view buffer (None: through the ByteBuffer
+# itself), since their Java element type has the same size as the serialized element
+MSG_TYPE_TO_BULK_VIEW = {
+    'int8': None,
+    'int16': 'asShortBuffer',
+    'int32': 'asIntBuffer',
+    'int64': 'asLongBuffer',
+    'uint64': 'asLongBuffer',
+    'float32': 'asFloatBuffer',
+    'float64': 'asDoubleBuffer'}
+
+MSG_TYPE_TO_VIEW_CODE = {
+    'bool': 'buffer.get(%s) != 0',
+    'char': '(char)(buffer.get(%s) & 0xff)',
+    'byte': '(short)(buffer.get(%s) & 0xff)',
+    'uint8': '(short)(buffer.get(%s) & 0xff)',
+    'int8': 'buffer.get(%s)',
+    'uint16': '(int)(buffer.getShort(%s) & 0xffff)',
+    'int16': 'buffer.getShort(%s)',
+    'uint32': '(buffer.getInt(%s) & 0xffffffffL)',
+    'int32': 'buffer.getInt(%s)',
+    'uint64': 'buffer.getLong(%s)',
+    'int64': 'buffer.getLong(%s)',
+    'float32': 'buffer.getFloat(%s)',
+    'float64': 'buffer.getDouble(%s)',
+    'string': 'readString(%s)',
+    'time': 'readTime(%s)',
+    'duration': 'readDuration(%s)'}
+
 JAVA_PRIMITIVE_TYPES = ['char', 'byte', 'short', 'int', 'long', 'boolean', 'float', 'double']
 
+# Generator options, set with --option command line flags (see parse_options)
+#  lazy: messages copy their serialized bytes on deserialization and decode each field on first
+#        access; fields are only accessible through accessor methods
+#  byte_arrays: arrays of uint8, byte and char are represented as byte[] instead of short[] and char[],
+#        with name(i) accessors that return the unsigned element
+#  time_nsecs: time and duration fields are represented as long nanoseconds instead of Time and Duration
+#  struct_arrays: arrays of submessages that only have primitive fields (e.g. geometry_msgs/Point32[])
+#        are represented as a Type.Array that holds one primitive array per field
+OPTIONS = {'lazy': False, 'byte_arrays': False, 'time_nsecs': False, 'struct_arrays': False}
+
+# Types of which arrays are represented as byte[] with the byte_arrays option
+BYTE_ARRAY_TYPES = ['uint8', 'byte', 'char']
+
+# Maximum number of fields of lazily decoded messages (one bit per field); larger messages are eager
+LAZY_MAX_FIELDS = 64
+
 JAVA_HASH_CODES = {
     'char': '%(value)s',
     'byte': '%(value)s',
@@ -114,7 +165,9 @@ def builtin_type_size(type):
 
 def base_type_to_java(base_type):
     base_type = base_type.split('[')[0]
-    if (roslib.msgs.is_builtin(base_type)):
+    if is_nsecs_time(base_type):
+        java_type = 'long'
+    elif (roslib.msgs.is_builtin(base_type)):
         java_type = MSG_TYPE_TO_JAVA[base_type]
     elif (len(base_type.split('/')) == 1):
         if (roslib.msgs.is_header_type(base_type)):
@@ -131,12 +184,179 @@ def base_type_to_java(base_type):
         java_type = 'ros.pkg.%s.msg.%s' % (pkg, msg)
     return java_type
 
+def parse_options(argv):
+    """
+    Removes the --option flags from the argument list and enables the corresponding OPTIONS
+
+    @param argv: The command line arguments
+    @type argv: list
+    @return: The remaining arguments
+    @rtype: list
+    """
+    args = []
+    for arg in argv:
+        if arg.startswith('--'):
+            option = arg[2:].replace('-', '_')
+            if option not in OPTIONS:
+                raise Exception('Unknown option %s' % arg)
+            OPTIONS[option] = True
+        else:
+            args.append(arg)
+    return args
+
+def is_lazy(spec):
+    return OPTIONS['lazy'] and len(spec.parsed_fields()) <= LAZY_MAX_FIELDS
+
+def header_type_name():
+    ros_v = ros_version()
+    if ros_v and ros_v[0] == 1 and ros_v[1] < 3:
+        return 'roslib/Header'
+    else:
+        return 'std_msgs/Header'
+
+def load_spec_by_type(base_type, package):
+    """
+    Loads the spec of a (non-builtin) message type referenced from a message in the given package
+    """
+    if roslib.msgs.is_header_type(base_type):
+        base_type = header_type_name()
+    elif len(base_type.split('/')) == 1:
+        base_type = '%s/%s' % (package, base_type)
+    (_, spec) = roslib.msgs.load_by_type(base_type, package)
+    return spec
+
+_fixed_size_cache = {}
+
+def type_fixed_size(type, package):
+    """
+    Returns the serialized size of a single element of the given type, or None if it has variable size
+    """
+    base_type = type.split('[')[0]
+    if roslib.msgs.is_builtin(base_type):
+        return BUILTIN_TYPE_SIZES.get(base_type)
+    key = (package, base_type)
+    if key not in _fixed_size_cache:
+        _fixed_size_cache[key] = spec_fixed_size(load_spec_by_type(base_type, package))
+    return _fixed_size_cache[key]
+
+def field_fixed_size(field, package):
+    """
+    Returns the serialized size of the given field, or None if it has variable size
+    """
+    size = type_fixed_size(field.base_type, package)
+    if size is None or not field.is_array:
+        return size
+    if field.array_len is None:
+        return None
+    return size * field.array_len
+
+def spec_fixed_size(spec):
+    """
+    Returns the serialized size of messages of the given spec, or None if they have variable size
+    """
+    size = 0
+    for field in spec.parsed_fields():
+        field_size = field_fixed_size(field, spec.package)
+        if field_size is None:
+            return None
+        size += field_size
+    return size
+
+def element_size_code(field, package):
+    """
+    Returns the Java expression for the serialized size of a single element of the given field: the
+    FIXED_SIZE constant of fixed-size submessages, or a literal for builtin types
+    """
+    if field.is_builtin:
+        return '%d' % type_fixed_size(field.base_type, package)
+    return '%s.FIXED_SIZE' % base_type_to_java(field.base_type)
+
+_struct_element_cache = {}
+
+def is_struct_element(spec):
+    """
+    Returns whether arrays of the given message type are represented as a struct of arrays: all its
+    fields are single primitives
+    """
+    if not OPTIONS['struct_arrays'] or not spec.parsed_fields():
+        return False
+    for field in spec.parsed_fields():
+        if field.is_array or base_type_to_java(field.base_type) not in JAVA_PRIMITIVE_TYPES:
+            return False
+    return True
+
+def is_struct_array(field, package):
+    """
+    Returns whether the given field is an array that is represented as a struct of arrays
+    """
+    if not OPTIONS['struct_arrays'] or not field.is_array or field.is_builtin:
+        return False
+    key = (package, field.base_type)
+    if key not in _struct_element_cache:
+        _struct_element_cache[key] = is_struct_element(load_spec_by_type(field.base_type, package))
+    return _struct_element_cache[key]
+
+def is_nsecs_time(type):
+    return OPTIONS['time_nsecs'] and type.split('[')[0] in ['time', 'duration']
+
+def is_time_object(type):
+    return not OPTIONS['time_nsecs'] and type.split('[')[0] in ['time', 'duration']
+
+def is_string(field):
+    return field.type == 'string'
+
+def is_byte_array(field):
+    return OPTIONS['byte_arrays'] and field.is_array and field.base_type.split('[')[0] in BYTE_ARRAY_TYPES
+
+def is_bulk_array(field):
+    return is_byte_array(field) or \
+        (field.is_array and field.is_builtin and field.base_type.split('[')[0] in MSG_TYPE_TO_BULK_VIEW)
+
+def field_to_java(field):
+    """
+    Returns the Java (element) type of the given field
+    """
+    if is_byte_array(field):
+        return 'byte'
+    return base_type_to_java(field.base_type)
+
+def bulk_array_code(field, operation, length):
+    """
+    Returns the code that puts or gets (operation) the elements of a bulk array field, advancing the
+    position of bb past length elements
+    """
+    base_type = field.base_type.split('[')[0]
+    view = None if is_byte_array(field) else MSG_TYPE_TO_BULK_VIEW[base_type]
+    if view is None:
+        return '    bb.%s(%s);\n' % (operation, field.name)
+    return '    bb.%s().%s(%s);\n    bb.position(bb.position() + %s * %d);\n' \
+        % (view, operation, field.name, length, BUILTIN_TYPE_SIZES[base_type])
+
 def base_type_serialization_code(type):
+    if is_nsecs_time(type):
+        return 'Serialization.writeNsecs(%(buffer)s, %(name)s)'
     return MSG_TYPE_TO_SERIALIZATION_CODE[type.split('[')[0]]
 
 def base_type_deserialization_code(type):
+    if is_nsecs_time(type):
+        return 'Serialization.readNsecs(%s)'
     return MSG_TYPE_TO_DESERIALIZATION_CODE[type.split('[')[0]]
 
+def element_deserialization_code(field, previous):
+    """
+    Returns the code that decodes one value of the given builtin field from bb, reusing the current
+    value given by the previous expression if its type allows
+    """
+    base_type = field.base_type.split('[')[0]
+    if base_type in MSG_TYPE_TO_REUSING_DESERIALIZATION_CODE and not is_nsecs_time(base_type):
+        return MSG_TYPE_TO_REUSING_DESERIALIZATION_CODE[base_type] % ('bb', previous)
+    return base_type_deserialization_code(base_type) % 'bb'
+
+def base_type_view_code(type):
+    if is_nsecs_time(type):
+        return 'readNsecs(%s)'
+    return MSG_TYPE_TO_VIEW_CODE[type.split('[')[0]]
+
 def type_initializer(type, default_val = None):
     if default_val is not None:
         if type == 'float32':
@@ -144,7 +364,7 @@ def type_initializer(type, default_val = None):
         else:
             return ' = %s' % default_val
     elif roslib.msgs.is_builtin(type):
-        if type in ['time', 'duration', 'string']:
+        if type == 'string' or is_time_object(type):
             return ' = new %s()' % base_type_to_java(type)
         else:
             return ''
@@ -161,7 +381,10 @@ def msg_decl_to_java(field, default_val=None):
     @return: The Java declaration
     @rtype: str
     """
-    java_type = base_type_to_java(field.type)
+    if type(field).__name__ == 'Field':
+        java_type = field_to_java(field)
+    else:
+        java_type = base_type_to_java(field.type)
 
     if type(field).__name__ == 'Field' and field.is_array:
         if field.array_len is None:
@@ -246,6 +469,9 @@ def write_class(s, spec, extra_metadata_methods={}, static=False):
                                  'DataType': '"%s/%s"' % (spec.package, spec.short_name),
                                  'MessageDefinition': full_text},
                                 **extra_metadata_methods))
+    write_view_class(s, spec)
+    if is_struct_element(spec):
+        write_struct_array_class(s, spec)
     
     s.write('} // class %s\n'%(msg))
 
@@ -257,6 +483,8 @@ def write_constructor(s, spec):
         if field.type.split('[')[0] in roslib.msgs.PRIMITIVE_TYPES and  \
                 field.type.split('[')[0] != 'string':
             continue
+        if is_nsecs_time(field.type) or is_struct_array(field, spec.package):
+            continue
         if field.is_array and field.array_len:
             s.write("""
     for(int __i=0; __i<%(array_len)d; __i++) {
@@ -267,7 +495,16 @@ def write_constructor(s, spec):
        'initializer': type_initializer(field.type.split('[')[0])})
     s.write('  }\n')
             
-def write_member(s, field):
+def field_decl_to_java(field, package):
+    """
+    Returns the Java declaration of the given field, taking the struct_arrays option into account
+    """
+    if is_struct_array(field, package):
+        array_type = '%s.Array' % base_type_to_java(field.base_type)
+        return '%s %s = new %s(%s)' % (array_type, field.name, array_type, field.array_len or '')
+    return msg_decl_to_java(field)
+
+def write_member(s, field, package, visibility='public'):
     """
     Writes a single member's declaration and type typedef
     
@@ -278,8 +515,8 @@ def write_member(s, field):
     @param name: The name of the member
     @type name: str
     """
-    java_decl = msg_decl_to_java(field)
-    s.write('  public %s;\n' % java_decl)
+    java_decl = field_decl_to_java(field, package)
+    s.write('  %s %s;\n' % (visibility, java_decl))
 
 def write_members(s, spec):
     """
@@ -290,7 +527,14 @@ def write_members(s, spec):
     @param spec: The message spec
     @type spec: roslib.msgs.MsgSpec
     """
-    [write_member(s, field) for field in spec.parsed_fields()]
+    if is_lazy(spec):
+        [write_member(s, field, spec.package, 'protected') for field in spec.parsed_fields()]
+    else:
+        [write_member(s, field, spec.package) for field in spec.parsed_fields()]
+    # UTF-8 encodings of string fields, shared by serializationLength and serialize
+    for field in spec.parsed_fields():
+        if is_string(field):
+            s.write('  private Serialization.EncodedString __%s_encoded;\n' % field.name)
         
 def escape_string(str):
     str = str.replace('\\', '\\\\')
@@ -322,72 +566,173 @@ def write_constant_declarations(s, spec):
     """
     for constant in spec.constants:
         write_constant_declaration(s, constant) 
+    fixed_size = spec_fixed_size(spec)
+    if fixed_size is not None:
+        s.write('  static public final int FIXED_SIZE = %d;\n' % fixed_size)
     s.write('\n')
     
 def write_clone_methods(s, spec):
+    """
+    Writes clone, setTo and copyInto. copyInto deep-copies the fields into the given message and reuses
+    its arrays, lists and submessages where possible; strings are immutable and are shared.
+    """
     s.write("""
   public %(type)s clone() {
     %(type)s c = new %(type)s();
-    c.deserialize(serialize(0));
+    copyInto(c);
     return c;
   }
-""" % {'type': spec.short_name})
-    s.write("""
+
   public void setTo(ros.communication.Message m) {
-    deserialize(m.serialize(0));
+    ((%(type)s) m).copyInto(this);
   }
-""")
+
+  public void copyInto(%(type)s c) {
+    if (c == this) return;
+""" % {'type': spec.short_name})
+    if is_lazy(spec):
+        s.write('    __decodeAll();\n    c.__pending = 0;\n    c.__length = __length;\n')
+    for field in spec.parsed_fields():
+        write_field_copy(s, field, spec.package)
+    s.write('  }\n')
+
+def write_field_copy(s, field, package):
+    """
+    Writes the code that copies the given field into message c
+    """
+    if is_struct_array(field, package):
+        s.write('    %(name)s.copyInto(c.%(name)s);\n' % {'name': field.name})
+        return
+    java_type = field_to_java(field)
+    base_type = field.base_type.split('[')[0]
+    if field.is_builtin and is_time_object(base_type):
+        element_copy = 'new %(type)s(%%s)' % {'type': java_type}
+    elif field.is_builtin:
+        element_copy = None
+    else:
+        element_copy = 'clone'
+    d = {'name': field.name, 'type': java_type}
+
+    if not field.is_array:
+        if element_copy is None:
+            s.write('    c.%(name)s = %(name)s;\n' % d)
+            if is_string(field):
+                s.write('    c.__%(name)s_encoded = __%(name)s_encoded;\n' % d)
+        elif element_copy == 'clone':
+            s.write('    %(name)s.copyInto(c.%(name)s);\n' % d)
+        else:
+            s.write('    c.%s = %s;\n' % (field.name, element_copy % field.name))
+    elif field.array_len is not None or java_type in JAVA_PRIMITIVE_TYPES:
+        s.write("""    if (c.%(name)s == null || c.%(name)s.length != %(name)s.length)
+      c.%(name)s = new %(type)s[%(name)s.length];
+""" % d)
+        if element_copy is None:
+            s.write('    System.arraycopy(%(name)s, 0, c.%(name)s, 0, %(name)s.length);\n' % d)
+        elif element_copy == 'clone':
+            s.write("""    for (int __i = 0; __i < %(name)s.length; __i++) {
+      if (c.%(name)s[__i] == null || c.%(name)s[__i] == %(name)s[__i]) c.%(name)s[__i] = new %(type)s();
+      %(name)s[__i].copyInto(c.%(name)s[__i]);
+    }
+""" % d)
+        else:
+            s.write("""    for (int __i = 0; __i < %(name)s.length; __i++)
+      c.%(name)s[__i] = %(copy)s;
+""" % dict(d, copy=element_copy % ('%s[__i]' % field.name)))
+    else:
+        s.write("""    if (c.%(name)s == null || c.%(name)s == %(name)s)
+      c.%(name)s = new java.util.ArrayList<%(type)s>(%(name)s.size());
+""" % d)
+        if element_copy is None:
+            s.write('    c.%(name)s.clear();\n    c.%(name)s.addAll(%(name)s);\n' % d)
+        elif element_copy == 'clone':
+            s.write("""    while (c.%(name)s.size() > %(name)s.size())
+      c.%(name)s.remove(c.%(name)s.size() - 1);
+    for (int __i = 0; __i < %(name)s.size(); __i++) {
+      if (__i < c.%(name)s.size()) %(name)s.get(__i).copyInto(c.%(name)s.get(__i));
+      else c.%(name)s.add(%(name)s.get(__i).clone());
+    }
+""" % d)
+        else:
+            s.write("""    c.%(name)s.clear();
+    for (%(type)s __v : %(name)s)
+      c.%(name)s.add(%(copy)s);
+""" % dict(d, copy=element_copy % '__v'))
 
 def write_serialization_length(s, spec):
+    """
+    Writes serializationLength. The sizes of all fixed-size fields are summed into a single constant.
+    Lazily decoded messages return the length of the deserialized bytes as long as they have not been
+    modified through their accessors.
+    """
     s.write("""
   public int serializationLength() {
-    int __l = 0;
 """)
+    if spec_fixed_size(spec) is not None:
+        s.write('    return FIXED_SIZE;\n  }\n')
+        return
+    if is_lazy(spec):
+        s.write('    if (__length >= 0) return __length;\n    __decodeAll();\n')
+    fixed_length = 0
+    body = StringIO()
     for field in spec.parsed_fields():
-        java_type = base_type_to_java(field.base_type)
+        field_size = field_fixed_size(field, spec.package)
+        if field_size is not None:
+            fixed_length += field_size
+            continue
+        java_type = field_to_java(field)
+        element_size = type_fixed_size(field.base_type, spec.package)
         if field.type.split('[')[0] == 'string':
             if field.is_array:
                 if field.array_len is None:
-                    s.write('    __l += 4;')
-                s.write("""
+                    fixed_length += 4
+                body.write("""
     for(java.lang.String val : %(name)s) {
-      __l += 4 + val.length();
+      __l += 4 + Serialization.encodedLength(val);
     }
 """ % {'name': field.name})
             else:
-                s.write('    __l += 4 + %s.length();\n' % field.name)
-
-        elif field.is_builtin:
-            if field.is_array and field.array_len is None:
-                if java_type in JAVA_PRIMITIVE_TYPES:
-                    size_expr = '4 + %s.length * %d' % (field.name, builtin_type_size(field.type))
-                else:
-                    size_expr = '4 + %s.size() * %d' % (field.name, builtin_type_size(field.type))
-            elif field.is_array:
-                size_expr = '%d' % (int(field.array_len) * builtin_type_size(field.type))
+                fixed_length += 4
+                body.write('    __%(name)s_encoded = Serialization.encode(__%(name)s_encoded, %(name)s);\n'
+                           '    __l += __%(name)s_encoded.bytes.length;\n' % {'name': field.name})
+        elif element_size is not None:
+            # variable-length array of fixed-size elements
+            fixed_length += 4
+            if java_type in JAVA_PRIMITIVE_TYPES:
+                body.write('    __l += %s.length * %s;\n' % (field.name, element_size_code(field, spec.package)))
             else:
-                size_expr = '%d' % builtin_type_size(field.type)
-            s.write('    __l += %s; // %s\n' % (size_expr, field.name))
+                body.write('    __l += %s.size() * %s;\n' % (field.name, element_size_code(field, spec.package)))
         elif field.is_array:
             if field.array_len is None:
-                s.write('    __l += 4;')
-            s.write("""
+                fixed_length += 4
+            body.write("""
     for(%s val : %s) {
       __l += val.serializationLength();
     }
 """ % (java_type, field.name))
         else:
-            s.write('    __l += %s.serializationLength();\n' % field.name)
-                        
+            body.write('    __l += %s.serializationLength();\n' % field.name)
+
+    s.write('    int __l = %d;\n' % fixed_length)
+    s.write(body.getvalue())
     s.write('    return __l;\n  }\n')
 
 def write_serialization_method(s, spec):
     s.write("""
   public void serialize(ByteBuffer bb, int seq) {
 """)
+    if is_lazy(spec):
+        s.write('    __decodeAll();\n')
     for field in spec.parsed_fields():
-        java_type = base_type_to_java(field.base_type)
-        if field.is_builtin:
+        java_type = field_to_java(field)
+        if is_bulk_array(field):
+            if field.array_len is None:
+                s.write('    bb.putInt(%s.length);\n' % field.name)
+            s.write(bulk_array_code(field, 'put', '%s.length' % field.name))
+        elif is_struct_array(field, spec.package):
+            if field.array_len is None:
+                s.write('    bb.putInt(%s.size());\n' % field.name)
+            s.write('    %s.serialize(bb);\n' % field.name)
+        elif field.is_builtin:
             if field.is_array:
                 if field.array_len is None:
                     if java_type in JAVA_PRIMITIVE_TYPES:
@@ -402,6 +747,11 @@ def write_serialization_method(s, spec):
        'name': field.name,
        'serialization': base_type_serialization_code(field.type) % {'buffer': 'bb', 'name': 'val'}})
 
+            # No array. Strings are written from their cached encoding
+            elif is_string(field):
+                s.write('    __%(name)s_encoded = Serialization.encode(__%(name)s_encoded, %(name)s);\n'
+                        '    Serialization.writeString(bb, __%(name)s_encoded);\n' % {'name': field.name})
+
             # No array. Use primitive serialization
             else:
                 s.write('    %s;\n' % (base_type_serialization_code(field.type) % {'buffer': 'bb',
@@ -424,69 +774,220 @@ def write_serialization_method(s, spec):
     s.write('  }\n')
 
 def write_deserialization_method(s, spec):
+    if is_lazy(spec):
+        write_lazy_deserialization_methods(s, spec)
+        return
     s.write("""
   public void deserialize(ByteBuffer bb) {
 """)
     for field in spec.parsed_fields():
-        java_type = base_type_to_java(field.base_type)
+        write_field_deserialization(s, field, spec.package)
+    s.write('  }\n')
+    write_projection_method(s, spec)
 
-        if field.is_array:
-            # Template fields:
-            # size_initializer
-            # type_initializer
-            # deserialization code
+def write_projection_method(s, spec):
+    """
+    Writes deserialize(ByteBuffer, FieldMask), which decodes the fields selected by the mask and skips
+    the others. Lazily decoded messages only decode the fields that are accessed anyway, so they inherit
+    the default, which ignores the mask.
+    """
+    fields = spec.parsed_fields()
+    s.write("""
+  private static final java.lang.String[] __FIELD_NAMES = {%(names)s};
 
-            size_initializer = None
-            type_initializer = None
-            deserialization_code = None
+  public void deserialize(ByteBuffer bb, ros.communication.FieldMask mask) {
+    if (mask == null) {
+      deserialize(bb);
+      return;
+    }
+    ros.communication.FieldMask.Projection __p = mask.project(__FIELD_NAMES);
+""" % {'names': ', '.join(['"%s"' % field.name for field in fields])})
+    for (i, field) in enumerate(fields):
+        decode = StringIO()
+        write_field_deserialization(decode, field, spec.package, '__p.submask(%d)' % i)
+        skip = StringIO()
+        write_field_skip(skip, field, spec.package)
+        s.write('    if (__p.includes(%d)) {\n%s    } else {\n%s    }\n'
+                % (i, indent_code(decode.getvalue()), indent_code(skip.getvalue())))
+    s.write('  }\n')
 
-            if field.array_len is None:
-                size_initializer = 'bb.getInt()'
-                if java_type not in JAVA_PRIMITIVE_TYPES:
-                    type_initializer = 'new java.util.ArrayList<%(type)s>(__%(name)s_len)'
-                    if field.is_builtin:
-                        deserialization_code = '%(name)s.add(%(deserialization_code)s)' \
-                            % {'name': '%(name)s',
-                               'deserialization_code': base_type_deserialization_code(field.type) % 'bb'}
-                    else:
-                        deserialization_code = """%(type)s __tmp = new %(type)s();
-%(indent)s__tmp.deserialize(bb);
-%(indent)s%(name)s.add(__tmp);"""
-
-            if not size_initializer:
-                size_initializer = '%(name)s.length;' % {'name': field.name}
-            if not type_initializer:
-                type_initializer = 'new %(type)s[__%(name)s_len]'
-            if not deserialization_code:
-                if field.is_builtin:
-                    deserialization_code = '%(name)s[__i] = %(deserialization_code)s' \
-                        % {'name': '%(name)s',
-                           'deserialization_code': base_type_deserialization_code(field.type) % 'bb'}
-                else:
-                    deserialization_code = """%(type)s __tmp = new %(type)s();
-%(indent)s__tmp.deserialize(bb);
-%(indent)s%(name)s[__i] = __tmp"""
-
-            # Assemble the code from size_initializer, type_initializer and deserialization_code
-            default_vars_dict = {'name': field.name, 'type': java_type}
-            s.write("""
-    int __%(name)s_len = %(size_initializer)s;
-    %(name)s = %(type_initializer)s;
+def indent_code(code):
+    """
+    Indents the non-empty lines of the given code by one more level
+    """
+    return ''.join([line and '  ' + line for line in code.lstrip('\n').splitlines(True)])
+
+def write_skip_method(s, spec):
+    """
+    Writes __s_skip, which advances bb past a serialized message of this type without decoding it
+    """
+    s.write("""
+  public static void __s_skip(ByteBuffer bb) {
+""")
+    fixed_size = spec_fixed_size(spec)
+    if fixed_size is not None:
+        s.write('    bb.position(bb.position() + FIXED_SIZE);\n')
+    else:
+        for field in spec.parsed_fields():
+            write_field_skip(s, field, spec.package)
+    s.write('  }\n')
+
+def write_field_skip(s, field, package):
+    """
+    Writes the code that advances bb past the given field
+    """
+    size = field_fixed_size(field, package)
+    if size is not None:
+        s.write('    bb.position(bb.position() + %d);\n' % size)
+        return
+    java_type = base_type_to_java(field.base_type)
+    if field.base_type == 'string':
+        element_skip = 'bb.position(bb.position() + 4 + bb.getInt(bb.position()))'
+    else:
+        element_skip = '%s.__s_skip(bb)' % java_type
+    if not field.is_array:
+        s.write('    %s;\n' % element_skip)
+    elif type_fixed_size(field.base_type, package) is not None:
+        s.write('    bb.position(bb.position() + 4 + bb.getInt(bb.position()) * %s);\n'
+                % element_size_code(field, package))
+    else:
+        s.write("""    for(int __i=0, __n=%(length)s; __i<__n; __i++) {
+      %(skip)s;
+    }
+""" % {'length': field.array_len or 'bb.getInt()', 'skip': element_skip})
+
+def write_lazy_deserialization_methods(s, spec):
+    """
+    Writes the deserialization and accessor methods of a lazily decoded message. deserialize copies the
+    serialized bytes of the message, and each field is decoded on first access, at the position given
+    by the View over the copy (constant for the fixed-size prefix, otherwise from its offset index).
+    Bit i of __pending is set while field i still has to be decoded. __length caches the serialized
+    length until a setter or the getter of a mutable (array, submessage or time) field is called.
+    """
+    fields = spec.parsed_fields()
+    s.write("""
+  private byte[] __raw;
+  private View __view;
+  private long __pending;
+  private int __length = -1;
+
+  public void deserialize(ByteBuffer bb) {
+    if (__view == null) __view = new View();
+    __view.wrap(bb);
+    int __len = __view.serializationLength();
+    if (__raw == null || __raw.length != __len) __raw = new byte[__len];
+    bb.get(__raw);
+    __view.wrap(ByteBuffer.wrap(__raw).order(java.nio.ByteOrder.LITTLE_ENDIAN), 0);
+    __pending = %(all)s;
+    __length = __len;
+  }
+
+  private ByteBuffer __field(int k) {
+    ByteBuffer bb = ByteBuffer.wrap(__raw).order(java.nio.ByteOrder.LITTLE_ENDIAN);
+    bb.position(__view.fieldOffset(k));
+    return bb;
+  }
+
+  private void __decodeAll() {
+    if (__pending == 0) return;
+""" % {'all': '0' if not fields else '0x%xL' % ((1 << len(fields)) - 1)})
+    for (i, field) in enumerate(fields):
+        s.write('    if ((__pending & 0x%xL) != 0) __decode_%s();\n' % (1 << i, field.name))
+    s.write('  }\n')
+
+    for (i, field) in enumerate(fields):
+        mutable = field.is_array or is_time_object(field.base_type) or not field.is_builtin
+        d = {'name': field.name, 'bit': '0x%xL' % (1 << i), 'index': i,
+             'type': field_decl_to_java(field, spec.package).split(' %s' % field.name)[0],
+             'invalidate': '    __length = -1;\n' if mutable else ''}
+        s.write("""
+  private void __decode_%(name)s() {
+    ByteBuffer bb = __field(%(index)d);
+""" % d)
+        write_field_deserialization(s, field, spec.package)
+        s.write("""    __pending &= ~%(bit)s;
+  }
+
+  public %(type)s %(name)s() {
+    if ((__pending & %(bit)s) != 0) __decode_%(name)s();
+%(invalidate)s    return %(name)s;
+  }
+
+  public void %(name)s(%(type)s value) {
+    __pending &= ~%(bit)s;
+    __length = -1;
+    %(name)s = value;
+  }
+""" % d)
+
+def write_field_deserialization(s, field, package, mask=None):
+    """
+    Writes the code that decodes the given field from ByteBuffer bb. Submessages are decoded with the
+    FieldMask given by the mask expression, if any.
+    """
+    java_type = field_to_java(field)
+    args = 'bb' if mask is None else 'bb, %s' % mask
+
+    if is_struct_array(field, package):
+        s.write('    %s.deserialize(bb, %s);\n' % (field.name, field.array_len or 'bb.getInt()'))
+
+    elif is_bulk_array(field):
+        # The array is reused when its length matches, so that pooled messages decode without garbage
+        s.write("""
+    int __%(name)s_len = %(size)s;
+    if (%(name)s.length != __%(name)s_len) %(name)s = new %(type)s[__%(name)s_len];
+""" % {'name': field.name, 'type': java_type,
+       'size': 'bb.getInt()' if field.array_len is None else '%s.length' % field.name})
+        s.write(bulk_array_code(field, 'get', '__%s_len' % field.name))
+
+    elif field.is_array and field.array_len is None and java_type not in JAVA_PRIMITIVE_TYPES:
+        # Lists are cleared down to the new length and refilled, reusing their elements
+        d = {'name': field.name, 'type': java_type, 'args': args}
+        s.write("""
+    int __%(name)s_len = bb.getInt();
+    if (%(name)s == null) %(name)s = new java.util.ArrayList<%(type)s>(__%(name)s_len);
+    while (%(name)s.size() > __%(name)s_len) %(name)s.remove(%(name)s.size() - 1);
     for(int __i=0; __i<__%(name)s_len; __i++) {
-      %(deserialization_code)s;
+""" % d)
+        if field.is_builtin:
+            s.write("""      %(type)s __v = %(decode)s;
+      if (__i < %(name)s.size()) %(name)s.set(__i, __v);
+      else %(name)s.add(__v);
+    }
+""" % dict(d, decode=element_deserialization_code(field, '__i < %(name)s.size() ? %(name)s.get(__i) : null' % d)))
+        else:
+            s.write("""      if (__i < %(name)s.size()) {
+        %(name)s.get(__i).deserialize(%(args)s);
+      } else {
+        %(type)s __tmp = new %(type)s();
+        __tmp.deserialize(%(args)s);
+        %(name)s.add(__tmp);
+      }
     }
-""" % dict(default_vars_dict,
-           **{'size_initializer': size_initializer % default_vars_dict,
-              'type_initializer': type_initializer % default_vars_dict,
-              'deserialization_code': deserialization_code % dict(default_vars_dict, **{'indent': 6*' '})}))
+""" % d)
 
-        # No array. Default deserialization.
-        elif field.is_builtin:
-            s.write('    %s = %s;\n' % (field.name,
-                                        base_type_deserialization_code(field.type) % 'bb'))
+    elif field.is_array:
+        # Arrays are reused when their length is unchanged, and so are their elements
+        d = {'name': field.name, 'type': java_type, 'args': args,
+             'size': 'bb.getInt()' if field.array_len is None else str(field.array_len)}
+        s.write("""
+    int __%(name)s_len = %(size)s;
+    if (%(name)s == null || %(name)s.length != __%(name)s_len) %(name)s = new %(type)s[__%(name)s_len];
+    for(int __i=0; __i<__%(name)s_len; __i++) {
+""" % d)
+        if field.is_builtin:
+            s.write('      %s[__i] = %s;\n' % (field.name, element_deserialization_code(field, '%s[__i]' % field.name)))
         else:
-            s.write('    %s.deserialize(bb);\n' % field.name)
-    s.write('  }\n')
+            s.write("""      if (%(name)s[__i] == null) %(name)s[__i] = new %(type)s();
+      %(name)s[__i].deserialize(%(args)s);
+""" % d)
+        s.write('    }\n')
+
+    # No array. Default deserialization.
+    elif field.is_builtin:
+        s.write('    %s = %s;\n' % (field.name, element_deserialization_code(field, field.name)))
+    else:
+        s.write('    %s.deserialize(%s);\n' % (field.name, args))
     
 def write_serialization_methods(s, spec):
     write_serialization_length(s, spec)
@@ -506,16 +1007,23 @@ def write_equals_method(s, spec):
     if(!(o instanceof %(type)s))
       return false;
     %(type)s other = (%(type)s) o;
-    return
-""" % {'type': spec.short_name})
+%(decode)s    return
+""" % {'type': spec.short_name,
+       'decode': '    __decodeAll();\n    other.__decodeAll();\n' if is_lazy(spec) else ''})
 
     for field in spec.parsed_fields():
-        java_type = base_type_to_java(field.base_type)
+        java_type = field_to_java(field)
         template_dict = {'name': field.name}
-        if field.is_array and (field.array_len or java_type in JAVA_PRIMITIVE_TYPES):
+        if is_struct_array(field, spec.package):
+            s.write('      %(name)s.equals(other.%(name)s) &&\n' % template_dict)
+        elif field.is_array and is_time_object(field.base_type):
+            s.write('      ros.communication.TimeUnit.sameValues(%(name)s, other.%(name)s) &&\n' % template_dict)
+        elif field.is_array and (field.array_len or java_type in JAVA_PRIMITIVE_TYPES):
             s.write('      java.util.Arrays.equals(%(name)s, other.%(name)s) &&\n' % template_dict)
         elif not field.is_array and java_type in JAVA_PRIMITIVE_TYPES:
             s.write('      %(name)s == other.%(name)s &&\n' % template_dict)
+        elif not field.is_array and is_time_object(field.base_type):
+            s.write('      %(name)s.sameAs(other.%(name)s) &&\n' % template_dict)
         else:
             s.write('      %(name)s.equals(other.%(name)s) &&\n' % template_dict)
     s.write("""      true;
@@ -530,14 +1038,22 @@ def write_hash_code_method(s, spec):
     int result = 1;
     long tmp;
 """)
+    if is_lazy(spec):
+        s.write('    __decodeAll();\n')
     for field in spec.parsed_fields():
-        java_type = base_type_to_java(field.base_type)
+        java_type = field_to_java(field)
         template_dict = {'name': 'this.%s' % field.name}
-        if field.is_array and (field.array_len or java_type in JAVA_PRIMITIVE_TYPES):
+        if is_struct_array(field, spec.package):
+            s.write('    result = prime * result + %(name)s.hashCode();\n' % template_dict)
+        elif field.is_array and is_time_object(field.base_type):
+            s.write('    result = prime * result + ros.communication.TimeUnit.valuesHashCode(%(name)s);\n' % template_dict)
+        elif field.is_array and (field.array_len or java_type in JAVA_PRIMITIVE_TYPES):
             s.write('    result = prime * result + java.util.Arrays.hashCode(%(name)s);\n' % template_dict)
         elif not field.is_array and java_type in JAVA_PRIMITIVE_TYPES:
             s.write('    result = prime * result + %(hash_code)s;\n' \
                         % dict(template_dict, **{'hash_code': JAVA_HASH_CODES[java_type] % {'value': template_dict['name']}}))
+        elif not field.is_array and is_time_object(field.base_type):
+            s.write('    result = prime * result + ros.communication.TimeUnit.hashNsecs(%(name)s.totalNsecs());\n' % template_dict)
         else:
             s.write('    result = prime * result + (%(name)s == null ? 0 : %(name)s.hashCode());\n' % template_dict)
     s.write('    return result;\n  }\n')
@@ -556,7 +1072,359 @@ def write_member_functions(s, spec, msg_metadata_methods):
 
     write_clone_methods(s, spec)
     write_serialization_methods(s, spec)
+    write_skip_method(s, spec)
+    write_byte_array_accessors(s, spec)
+
+def write_byte_array_accessors(s, spec):
+    """
+    Writes the unsigned element accessors of the fields that are represented as byte[]
+    """
+    for (i, field) in enumerate(spec.parsed_fields()):
+        if not is_byte_array(field):
+            continue
+        d = {'name': field.name,
+             'type': base_type_to_java(field.base_type),
+             'decode': ''}
+        if is_lazy(spec):
+            d['decode'] = '    if ((__pending & 0x%xL) != 0) __decode_%s();\n' % (1 << i, field.name)
+        s.write("""
+  public %(type)s %(name)s(int i) {
+%(decode)s    return (%(type)s)(%(name)s[i] & 0xff);
+  }
+
+  public void %(name)s(int i, %(type)s value) {
+%(decode)s    %(name)s[i] = (byte)value;
+  }
+""" % d)
     
+def write_view_skip_code(s, field, package, index):
+    """
+    Writes the case of View.__skip that returns the position behind the given field, which starts at p
+    """
+    java_type = base_type_to_java(field.base_type)
+    size = field_fixed_size(field, package)
+    elem_size = type_fixed_size(field.base_type, package)
+    s.write('        case %d:\n' % index)
+    if size is not None:
+        s.write('          return p + %d;\n' % size)
+    elif not field.is_array:
+        if field.base_type == 'string':
+            s.write('          return skipString(p);\n')
+        else:
+            s.write('          return p + __%s_scratch().wrap(buffer, p).serializationLength();\n' % field.name)
+    elif elem_size is not None:
+        s.write('          return p + 4 + buffer.getInt(p) * %s;\n' % element_size_code(field, package))
+    else:
+        if field.array_len is None:
+            s.write('          __n = buffer.getInt(p);\n          p += 4;\n')
+        else:
+            s.write('          __n = %d;\n' % field.array_len)
+        if field.base_type == 'string':
+            s.write('          for(int __i=0; __i<__n; __i++) p = skipString(p);\n')
+        else:
+            s.write('          for(int __i=0; __i<__n; __i++) p += __%s_scratch().wrap(buffer, p).serializationLength();\n'
+                    % field.name)
+        s.write('          return p;\n')
+
+def write_view_accessors(s, field, package, pos):
+    """
+    Writes the accessors of the given field, which starts at position pos
+    """
+    java_type = base_type_to_java(field.base_type)
+    elem_size = type_fixed_size(field.base_type, package)
+    view_type = '%s.View' % java_type
+    d = {'name': field.name, 'type': java_type, 'view_type': view_type, 'pos': pos}
+    if elem_size is not None:
+        d['elem_size'] = element_size_code(field, package)
+    if field.is_builtin:
+        d['read'] = base_type_view_code(field.base_type) % '__p'
+    else:
+        s.write("""
+    private %(view_type)s __%(name)s;
+    private %(view_type)s __%(name)s_view() {
+      if (__%(name)s == null) __%(name)s = new %(view_type)s();
+      return __%(name)s;
+    }
+""" % d)
+        if field_fixed_size(field, package) is None:
+            # separate view for locating the fields behind this one, so views handed out stay in place
+            s.write("""
+    private %(view_type)s __%(name)s_scratch;
+    private %(view_type)s __%(name)s_scratch() {
+      if (__%(name)s_scratch == null) __%(name)s_scratch = new %(view_type)s();
+      return __%(name)s_scratch;
+    }
+""" % d)
+
+    if not field.is_array:
+        if field.is_builtin:
+            s.write("""
+    public %(type)s %(name)s() {
+      int __p = %(pos)s;
+      return %(read)s;
+    }
+""" % d)
+        else:
+            s.write("""
+    public %(view_type)s %(name)s() {
+      %(view_type)s __v = __%(name)s_view();
+      __v.wrap(buffer, %(pos)s);
+      return __v;
+    }
+""" % d)
+        return
+
+    if field.array_len is None:
+        d['length'] = 'buffer.getInt(%s)' % pos
+        d['start'] = '%s + 4' % pos
+    else:
+        d['length'] = '%d' % field.array_len
+        d['start'] = pos
+    s.write("""
+    public int %(name)s_length() {
+      return %(length)s;
+    }
+""" % d)
+    if field.is_builtin and elem_size is not None:
+        s.write("""
+    public %(type)s %(name)s(int i) {
+      int __p = %(start)s + i * %(elem_size)s;
+      return %(read)s;
+    }
+""" % d)
+    elif field.is_builtin:
+        s.write("""
+    public %(type)s %(name)s(int i) {
+      int __p = %(start)s;
+      for(int __i=0; __i<i; __i++) __p = skipString(__p);
+      return %(read)s;
+    }
+""" % d)
+    elif elem_size is not None:
+        s.write("""
+    public %(view_type)s %(name)s(int i) {
+      %(view_type)s __v = __%(name)s_view();
+      __v.wrap(buffer, %(start)s + i * %(elem_size)s);
+      return __v;
+    }
+""" % d)
+    else:
+        # remember the last accessed element, so that iterating over the array is linear
+        s.write("""
+    private int __%(name)s_index, __%(name)s_pos;
+    public %(view_type)s %(name)s(int i) {
+      %(view_type)s __v = __%(name)s_view();
+      int __i = 0, __p = %(start)s;
+      if (__%(name)s_index >= 0 && __%(name)s_index <= i) {
+        __i = __%(name)s_index;
+        __p = __%(name)s_pos;
+      }
+      for(; __i<i; __i++) __p += __v.wrap(buffer, __p).serializationLength();
+      __%(name)s_index = i;
+      __%(name)s_pos = __p;
+      __v.wrap(buffer, __p);
+      return __v;
+    }
+""" % d)
+
+def write_view_class(s, spec):
+    """
+    Writes the View class: a read-only flyweight that decodes fields directly from a ByteBuffer.
+    Fields behind variable-length fields are located through an offset table that is filled on demand.
+    Views returned by accessors of submessages are reused by subsequent calls of the same accessor.
+    """
+    fields = spec.parsed_fields()
+    fixed_size = spec_fixed_size(spec)
+    s.write("""
+  public static class View extends ros.communication.MessageView<%(type)s> {
+    public %(type)s materialize() {
+      %(type)s m = new %(type)s();
+      materializeInto(m);
+      return m;
+    }
+""" % {'type': spec.short_name})
+
+    # position of each field: constant as long as all preceding fields have fixed size
+    positions = []
+    const_offsets = []
+    const_offset = 0
+    for (i, field) in enumerate(fields):
+        if const_offset is not None:
+            positions.append('offset + %d' % const_offset)
+            const_offsets.append(const_offset)
+            field_size = field_fixed_size(field, spec.package)
+            const_offset = None if field_size is None else const_offset + field_size
+        else:
+            positions.append('__offset(%d)' % i)
+
+    resets = ['__%s_index = -1;' % field.name for field in fields
+              if field.is_array and not field.is_builtin and type_fixed_size(field.base_type, spec.package) is None]
+    if fixed_size is not None:
+        s.write("""
+    private static final int[] __OFFSETS = {%(offsets)s};
+
+    protected void reset() {
+    }
+
+    public int serializationLength() {
+      return FIXED_SIZE;
+    }
+
+    private int __offset(int k) {
+      return offset + __OFFSETS[k];
+    }
+""" % {'offsets': ', '.join(['%d' % o for o in const_offsets + [fixed_size]])})
+    else:
+        s.write("""
+    private int[] __offsets = new int[%(n)d];
+    private int __known;
+
+    protected void reset() {
+      __known = 1;
+%(resets)s    }
+
+    public int serializationLength() {
+      return __offset(%(last)d) - offset;
+    }
+
+    private int __offset(int k) {
+      while (__known <= k) {
+        __offsets[__known] = __skip(__known - 1, offset + __offsets[__known - 1]) - offset;
+        __known++;
+      }
+      return offset + __offsets[k];
+    }
+
+    private int __skip(int k, int p) {
+      int __n;
+      switch (k) {
+""" % {'n': len(fields) + 1, 'last': len(fields),
+       'resets': ''.join(['      %s\n' % r for r in resets])})
+        for (i, field) in enumerate(fields):
+            write_view_skip_code(s, field, spec.package, i)
+        s.write("""        default:
+          return p;
+      }
+    }
+""")
+
+    s.write("""
+    /** Returns the absolute position of the k-th field in the buffer. */
+    public int fieldOffset(int k) {
+      return __offset(k);
+    }
+""")
+    for (i, field) in enumerate(fields):
+        write_view_accessors(s, field, spec.package, positions[i])
+    s.write('  } // class View\n')
+
+def write_struct_array_class(s, spec):
+    """
+    Writes the Array class, which represents arrays of this message type as one primitive array per field.
+    Element i consists of the i-th values of all arrays, so the arrays must all have the same length.
+    """
+    fields = spec.parsed_fields()
+    first = fields[0].name
+    lazy = is_lazy(spec)
+    d = {'type': spec.short_name, 'first': first}
+    s.write("""
+  public static class Array {
+""")
+    for field in fields:
+        s.write('    public %(type)s[] %(name)s = new %(type)s[0];\n'
+                % {'type': base_type_to_java(field.base_type), 'name': field.name})
+    s.write("""
+    public Array() {
+    }
+
+    public Array(int size) {
+      resize(size);
+    }
+
+    public int size() {
+      return %(first)s.length;
+    }
+
+    public void resize(int size) {
+      if (size == %(first)s.length) return;
+""" % d)
+    for field in fields:
+        s.write("""      %(type)s[] __%(name)s = new %(type)s[size];
+      System.arraycopy(%(name)s, 0, __%(name)s, 0, Math.min(size, %(name)s.length));
+      %(name)s = __%(name)s;
+""" % {'type': base_type_to_java(field.base_type), 'name': field.name})
+    s.write("""    }
+
+    public %(type)s get(int i) {
+      %(type)s m = new %(type)s();
+      get(i, m);
+      return m;
+    }
+
+    public void get(int i, %(type)s m) {
+""" % d)
+    for field in fields:
+        s.write(('      m.%(name)s(%(name)s[i]);\n' if lazy else '      m.%(name)s = %(name)s[i];\n')
+                % {'name': field.name})
+    s.write("""    }
+
+    public void set(int i, %(type)s m) {
+""" % d)
+    for field in fields:
+        s.write(('      %(name)s[i] = m.%(name)s();\n' if lazy else '      %(name)s[i] = m.%(name)s;\n')
+                % {'name': field.name})
+    s.write("""    }
+
+    public void copyInto(Array c) {
+      if (c == this) return;
+""")
+    for field in fields:
+        s.write("""      if (c.%(name)s.length != %(name)s.length) c.%(name)s = new %(type)s[%(name)s.length];
+      System.arraycopy(%(name)s, 0, c.%(name)s, 0, %(name)s.length);
+""" % {'type': base_type_to_java(field.base_type), 'name': field.name})
+    s.write("""    }
+
+    public void serialize(ByteBuffer bb) {
+      for(int __i=0; __i<%(first)s.length; __i++) {
+""" % d)
+    for field in fields:
+        s.write('        %s;\n' % (base_type_serialization_code(field.type)
+                                  % {'buffer': 'bb', 'name': '%s[__i]' % field.name}))
+    s.write("""      }
+    }
+
+    public void deserialize(ByteBuffer bb, int size) {
+""")
+    for field in fields:
+        s.write('      if (%(name)s.length != size) %(name)s = new %(type)s[size];\n'
+                % {'type': base_type_to_java(field.base_type), 'name': field.name})
+    s.write('      for(int __i=0; __i<size; __i++) {\n')
+    for field in fields:
+        s.write('        %s[__i] = %s;\n' % (field.name, base_type_deserialization_code(field.type) % 'bb'))
+    s.write("""      }
+    }
+
+    public boolean equals(Object o) {
+      if(!(o instanceof Array))
+        return false;
+      Array other = (Array) o;
+      return
+""")
+    for field in fields:
+        s.write('        java.util.Arrays.equals(%(name)s, other.%(name)s) &&\n' % {'name': field.name})
+    s.write("""        true;
+    }
+
+    public int hashCode() {
+      int result = 1;
+""")
+    for field in fields:
+        s.write('      result = 31 * result + java.util.Arrays.hashCode(%s);\n' % field.name)
+    s.write("""      return result;
+    }
+  } // class Array
+""")
+
 def compute_full_text_escaped(gen_deps_dict):
     """
     Same as roslib.gentools.compute_full_text, except that the
@@ -626,6 +1494,7 @@ def generate(msg_path, output_base_path=None):
     s.close()
 
 def generate_messages(argv):
+    argv = parse_options(argv)
     if not os.path.exists(argv[-1]) or os.path.isdir(argv[-1]):
         for arg in argv[1:-1]:
             generate(arg, argv[-1])
@@ -146,6 +146,7 @@ public class %(srv_name)s extends ros.communication.Service<%(srv_name)s.Request
     s.close()
 
 def generate_services(argv):
+    argv = genmsg_java.parse_options(argv)
     if not os.path.exists(argv[-1]) or os.path.isdir(argv[-1]):
         for arg in argv[1:-1]:
             generate(arg, argv[-1])
@@ -0,0 +1,68 @@
+/*
+ * Software License Agreement (BSD License)
+ *
+ *  Copyright (c) 2008, Willow Garage, Inc.
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following
+ *     disclaimer in the documentation and/or other materials provided
+ *     with the distribution.
+ *   * Neither the name of Willow Garage, Inc. nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ *  FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ *  COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ *  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ *  BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ *  CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ *  ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package ros;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Settings of a subscription whose messages are collected in a native ring buffer and handed to Java in
+ * batches, so that high message rates do not cost a JNI upcall per message. A batch is handed over as
+ * soon as it holds maxMessages messages, or once its oldest message has waited for maxLatency.
+ *
+ * Messages that do not fit in the ring buffer, because Java falls behind, are dropped like messages
+ * that overflow the queue of the subscription. Messages larger than the buffer are dropped as well, with
+ * a warning logged for the first one; the subscription counts both (see
+ * {@link ros.roscpp.CppBatchedSubscriber#getDroppedMessages()}).
+ */
+public class BatchOptions {
+	public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+	public final int maxMessages;
+	public final long maxLatencyNanos;
+	public final int bufferSize;
+
+	public BatchOptions(int maxMessages, long maxLatency, TimeUnit unit, int bufferSize) {
+		if (maxMessages < 1) throw new IllegalArgumentException("Batches must hold at least one message");
+		if (maxLatency < 0) throw new IllegalArgumentException("Negative latency " + maxLatency);
+		if (bufferSize < 8) throw new IllegalArgumentException("Buffer size " + bufferSize + " is too small");
+		this.maxMessages = maxMessages;
+		this.maxLatencyNanos = unit.toNanos(maxLatency);
+		this.bufferSize = bufferSize & ~3; // records are 4-byte aligned
+	}
+
+	public BatchOptions(int maxMessages, long maxLatency, TimeUnit unit) {
+		this(maxMessages, maxLatency, unit, DEFAULT_BUFFER_SIZE);
+	}
+}
@@ -99,6 +99,26 @@ public abstract class NodeHandle {
 
 	public abstract <M extends Message> Subscriber<M> subscribe(String topic, M messageTemplate, Subscriber.Callback<M> callback, int queueSize)  throws RosException;
 
+	// Incoming messages are taken from pool, and are owned by the callback, which should release() them when done.
+	// Decoding reuses the Time, List and element instances of the pooled message in place, so references the
+	// application kept to fields of an earlier message change when the message is reused.
+	// (pools need the new roscpp serialization API; with older versions, the pool is ignored with a warning,
+	// and messages are cloned from the template)
+	public abstract <M extends Message> Subscriber<M> subscribe(String topic, M messageTemplate, Subscriber.Callback<M> callback, int queueSize, MessagePool<M> pool)  throws RosException;
+
+	// Incoming messages only have the fields selected by mask decoded (see FieldMask); pool and mask may be null
+	public abstract <M extends Message> Subscriber<M> subscribe(String topic, M messageTemplate, Subscriber.Callback<M> callback, int queueSize, MessagePool<M> pool, FieldMask mask)  throws RosException;
+
+	// Incoming messages are handed to Java in batches (see BatchOptions), and the callback is called on a thread
+	// of the subscription instead of the spinner; pool, mask and batching may be null
+	public abstract <M extends Message> Subscriber<M> subscribe(String topic, M messageTemplate, Subscriber.Callback<M> callback, int queueSize, MessagePool<M> pool, FieldMask mask, BatchOptions batching)  throws RosException;
+
+	// Incoming messages are passed on as serialized bytes; md5sum may be "*" to accept any publisher of the topic
+	public abstract RawSubscriber subscribeRaw(String topic, String dataType, String md5sum, RawSubscriber.Callback callback, int queueSize)  throws RosException;
+
+	// Publishes messages that are already serialized, as the given type
+	public abstract RawPublisher advertiseRaw(String newTopic, String dataType, String md5sum, String definition, int queueSize, boolean latch) throws RosException;
+
 	public abstract <Q extends Message, A extends Message, S extends Service<Q, A> > ServiceServer<Q, A, S> 
 	                advertiseService(String serviceName, S serviceTemplate, ServiceServer.Callback<Q,A> callback)  throws RosException;
 
@@ -120,6 +140,8 @@ public abstract class NodeHandle {
 	public abstract Time now();
 	public abstract void spin();
 	public abstract void spinOnce();
+	public abstract void spin(int threadCount);
+	public abstract AsyncSpinner createAsyncSpinner(int threadCount);
 	public abstract void logDebug(String message);
 	public abstract void logInfo(String message);
 	public abstract void logWarn(String message);
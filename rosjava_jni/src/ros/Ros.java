@@ -62,10 +62,19 @@ public abstract class Ros {
 
 	public abstract Time now();
 
+	/** Returns the current time in nanoseconds. */
+	public long nowNsecs() { return now().totalNsecs(); }
+
 	public abstract void spin();
 	
 	public abstract void spinOnce();
 
+	// Like spin(), but processes callbacks on threadCount threads (one per core if 0)
+	public abstract void spin(int threadCount);
+
+	// Spinner that processes callbacks on threadCount threads (one per core if 0) between its start() and stop()
+	public abstract AsyncSpinner createAsyncSpinner(int threadCount);
+
 	public abstract void logDebug(String message);
 	public abstract void logInfo(String message);
 	public abstract void logWarn(String message);
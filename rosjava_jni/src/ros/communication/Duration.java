@@ -58,6 +58,12 @@ public class Duration extends TimeUnit {
 		this.nsecs = t.nsecs;
 	}
 
+	public static Duration fromNsecs(long nanos) {
+		Duration d = new Duration();
+		d.setTotalNsecs(nanos);
+		return d;
+	}
+
 	public Duration add (Duration d) {
 		return new Duration(secs + d.secs,nsecs + d.nsecs);
 	}
@@ -65,15 +71,37 @@ public class Duration extends TimeUnit {
 	public Duration subtract (Duration d) {
 		return new Duration(secs - d.secs,nsecs - d.nsecs);
 	}
+
+	/** Sets this duration to d, and returns this. */
+	public Duration set(Duration d) {
+		secs = d.secs;
+		nsecs = d.nsecs;
+		return this;
+	}
+
+	/** Adds d to this duration in place, and returns this. */
+	public Duration increment(Duration d) {
+		setTotalNsecs(totalNsecs() + d.totalNsecs());
+		return this;
+	}
+
+	/** Subtracts d from this duration in place, and returns this. */
+	public Duration decrement(Duration d) {
+		setTotalNsecs(totalNsecs() - d.totalNsecs());
+		return this;
+	}
 	
 	public void sleep() throws InterruptedException {
 		Thread.sleep(totalNsecs() / 1000000);
 	}
 	
 	public boolean isLonger(Duration d) {
-		normalize();
-		d.normalize();
-		return (secs > d.secs) || ((secs == d.secs) && nsecs > d.nsecs);
+		return totalNsecs() > d.totalNsecs();
+	}
+
+	/** Returns true if d is as long as this duration, ignoring normalization. */
+	public boolean sameAs(Duration d) {
+		return totalNsecs() == d.totalNsecs();
 	}
 	
 	public static final Duration MAX_VALUE = new Duration(Integer.MAX_VALUE, 999999999);
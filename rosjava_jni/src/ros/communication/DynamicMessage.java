@@ -0,0 +1,210 @@
+/*
+ * Software License Agreement (BSD License)
+ *
+ *  Copyright (c) 2008, Willow Garage, Inc.
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following
+ *     disclaimer in the documentation and/or other materials provided
+ *     with the distribution.
+ *   * Neither the name of Willow Garage, Inc. nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ *  FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ *  COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ *  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ *  BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ *  CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ *  ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package ros.communication;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Message of a type that is only known at runtime, e.g. to relay, record or inspect topics of types that
+ * were not compiled in. Its layout is given by a {@link DynamicMessageType}, and its field values are
+ * accessed by name or index. Since it is a regular Message, it can be used as template with
+ * NodeHandle.subscribe and advertise.
+ *
+ * Numeric, bool and char fields are stored unboxed, so that decoding does not allocate; get() boxes
+ * them, whereas getLong() and getDouble() do not. Decoding reuses the arrays, lists and submessages of
+ * the previous message where it can.
+ *
+ * Values of other fields are not checked when they are set; a value of the wrong Java type is only
+ * detected (by a ClassCastException) when the message is serialized.
+ */
+public class DynamicMessage extends Message {
+	private final DynamicMessageType type;
+	private final Object[] values;  // values of the fields that are not scalars
+	private final long[] scalars;   // values of the scalar fields, as bits (see DynamicMessageType.Builtin)
+
+	public DynamicMessage(DynamicMessageType type) {
+		this.type = type;
+		this.values = new Object[type.getFieldCount()];
+		this.scalars = new long[type.getFieldCount()];
+		for (int i = 0; i < values.length; i++) {
+			if (type.scalar(i) == null) values[i] = type.codec(i).initial();
+		}
+	}
+
+	/** Creates a message of the type with the given name, MD5 sum and full message definition. */
+	public DynamicMessage(String datatype, String md5sum, String definition) {
+		this(DynamicMessageType.get(datatype, md5sum, definition));
+	}
+
+	public DynamicMessageType getType() {
+		return type;
+	}
+
+	public Object get(int field) {
+		DynamicMessageType.Builtin s = type.scalar(field);
+		return s != null ? s.box(scalars[field]) : values[field];
+	}
+
+	public Object get(String field) {
+		return get(index(field));
+	}
+
+	/** Returns the value of a numeric, bool (0 or 1) or char field; floating point values are truncated */
+	public long getLong(int field) {
+		long bits = scalars[field];
+		return scalar(field).isFloat() ? (long) Double.longBitsToDouble(bits) : bits;
+	}
+
+	public long getLong(String field) {
+		return getLong(index(field));
+	}
+
+	/** Returns the value of a numeric, bool (0 or 1) or char field */
+	public double getDouble(int field) {
+		long bits = scalars[field];
+		return scalar(field).isFloat() ? Double.longBitsToDouble(bits) : bits;
+	}
+
+	public double getDouble(String field) {
+		return getDouble(index(field));
+	}
+
+	public void set(int field, Object value) {
+		DynamicMessageType.Builtin s = type.scalar(field);
+		if (s != null) scalars[field] = s.unbox(value);
+		else values[field] = value;
+	}
+
+	public void set(String field, Object value) {
+		set(index(field), value);
+	}
+
+	private int index(String field) {
+		int i = type.indexOf(field);
+		if (i < 0) throw new IllegalArgumentException("Message type " + type + " has no field " + field);
+		return i;
+	}
+
+	private DynamicMessageType.Builtin scalar(int field) {
+		DynamicMessageType.Builtin s = type.scalar(field);
+		if (s == null) throw new IllegalArgumentException("Field " + type.getFieldName(field) + " of " + type + " is not a number");
+		return s;
+	}
+
+	public String getDataType() {
+		return type.getDataType();
+	}
+
+	public String getMD5Sum() {
+		return type.getMD5Sum();
+	}
+
+	public String getMessageDefinition() {
+		return type.getMessageDefinition();
+	}
+
+	public int serializationLength() {
+		int l = 0;
+		for (int i = 0; i < values.length; i++) {
+			DynamicMessageType.Builtin s = type.scalar(i);
+			l += s != null ? s.size : type.codec(i).length(values[i]);
+		}
+		return l;
+	}
+
+	public void serialize(ByteBuffer bb, int seq) {
+		for (int i = 0; i < values.length; i++) {
+			DynamicMessageType.Builtin s = type.scalar(i);
+			if (s != null) s.writeBits(bb, scalars[i]);
+			else type.codec(i).write(bb, values[i]);
+		}
+	}
+
+	public void deserialize(ByteBuffer bb) {
+		for (int i = 0; i < values.length; i++) {
+			DynamicMessageType.Builtin s = type.scalar(i);
+			if (s != null) scalars[i] = s.readBits(bb);
+			else values[i] = type.codec(i).read(bb, values[i]);
+		}
+	}
+
+	public DynamicMessage clone() {
+		DynamicMessage c = new DynamicMessage(type);
+		c.setTo(this);
+		return c;
+	}
+
+	public void setTo(Message m) {
+		DynamicMessage other = (DynamicMessage) m;
+		if (other.type != type) throw new IllegalArgumentException("Cannot set " + type + " to " + other.type);
+		if (other == this) return;
+		System.arraycopy(other.scalars, 0, scalars, 0, scalars.length);
+		for (int i = 0; i < values.length; i++) {
+			if (type.scalar(i) == null) values[i] = type.codec(i).copy(other.values[i]);
+		}
+	}
+
+	public boolean equals(Object o) {
+		if (!(o instanceof DynamicMessage)) return false;
+		DynamicMessage other = (DynamicMessage) o;
+		if (!type.getDataType().equals(other.type.getDataType()) || !Arrays.equals(scalars, other.scalars))
+			return false;
+		for (int i = 0; i < values.length; i++) {
+			Object a = values[i], b = other.values[i];
+			if (a == null ? b != null : b == null || !type.codec(i).equals(a, b)) return false;
+		}
+		return true;
+	}
+
+	public int hashCode() {
+		int h = Arrays.hashCode(scalars);
+		for (int i = 0; i < values.length; i++) {
+			h = 31 * h + (values[i] == null ? 0 : type.codec(i).hashCode(values[i]));
+		}
+		return h;
+	}
+
+	public String toString() {
+		StringBuilder s = new StringBuilder(type.getDataType()).append('{');
+		for (int i = 0; i < values.length; i++) {
+			if (i > 0) s.append(", ");
+			s.append(type.getFieldName(i)).append('=');
+			String v = Arrays.deepToString(new Object[] {get(i)}); // also formats primitive arrays
+			s.append(v, 1, v.length() - 1);
+		}
+		return s.append('}').toString();
+	}
+}
@@ -0,0 +1,688 @@
+/*
+ * Software License Agreement (BSD License)
+ *
+ *  Copyright (c) 2008, Willow Garage, Inc.
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following
+ *     disclaimer in the documentation and/or other materials provided
+ *     with the distribution.
+ *   * Neither the name of Willow Garage, Inc. nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ *  FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ *  COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ *  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ *  BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ *  CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ *  ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package ros.communication;
+
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Layout of a message type that is only known at runtime, parsed from its full message definition (the
+ * text returned by {@link Message#getMessageDefinition()}, which includes the definitions of all
+ * submessage types). Each field is compiled into a Codec (or a Builtin, for scalars) when the type is
+ * created, so that encoding and decoding a {@link DynamicMessage} only dispatches over its fields.
+ *
+ * Fields are represented like in generated messages (e.g. uint8 as short, uint32 as long, time as
+ * {@link Time}), except that arrays of strings, times, durations and submessages are always Lists.
+ */
+public final class DynamicMessageType {
+	private static final Map<String, DynamicMessageType> cache = new ConcurrentHashMap<String, DynamicMessageType>();
+	private static final Set<String> BUILTIN_TYPES = new HashSet<String>(Arrays.asList(
+		"bool", "char", "byte", "uint8", "int8", "uint16", "int16", "uint32", "int32", "uint64", "int64",
+		"float32", "float64", "string", "time", "duration"));
+	private static final String SEPARATOR =
+		"================================================================================\n";
+
+	private final String datatype;
+	private final String md5sum;
+	private final String definition;
+	private final String[] names;
+	private final String[] types;
+	private final Codec[] codecs;
+	private final Builtin[] scalars;
+	private final Map<String, Integer> indices = new HashMap<String, Integer>();
+
+	/**
+	 * Returns the type with the given name, MD5 sum and full message definition, which is only parsed the
+	 * first time it is requested.
+	 */
+	public static DynamicMessageType get(String datatype, String md5sum, String definition) {
+		String key = datatype + "/" + md5sum;
+		DynamicMessageType type = cache.get(key);
+		if (type == null) {
+			type = new Parser(definition).parse(datatype, md5sum);
+			cache.put(key, type);
+		}
+		return type;
+	}
+
+	private DynamicMessageType(String datatype, String md5sum, String definition, List<String[]> fields, Codec[] codecs,
+	                           Builtin[] scalars) {
+		this.datatype = datatype;
+		this.md5sum = md5sum;
+		this.definition = definition;
+		this.names = new String[fields.size()];
+		this.types = new String[fields.size()];
+		for (int i = 0; i < names.length; i++) {
+			types[i] = fields.get(i)[0];
+			names[i] = fields.get(i)[1];
+			indices.put(names[i], i);
+		}
+		this.codecs = codecs;
+		this.scalars = scalars;
+	}
+
+	public String getDataType() {
+		return datatype;
+	}
+
+	/** Returns the MD5 sum of the type, which is "*" for submessage types */
+	public String getMD5Sum() {
+		return md5sum;
+	}
+
+	public String getMessageDefinition() {
+		return definition;
+	}
+
+	public int getFieldCount() {
+		return names.length;
+	}
+
+	public String getFieldName(int field) {
+		return names[field];
+	}
+
+	/** Returns the type of field as it appears in the message definition, e.g. "float32[]" */
+	public String getFieldType(int field) {
+		return types[field];
+	}
+
+	/** Returns the index of the field with the given name, or -1 if the type has no such field */
+	public int indexOf(String name) {
+		Integer i = indices.get(name);
+		return i == null ? -1 : i;
+	}
+
+	/** Returns the codec of a field that is not a scalar */
+	Codec codec(int field) {
+		return codecs[field];
+	}
+
+	/** Returns the type of a scalar field (a single numeric, bool or char value), or null for other fields */
+	Builtin scalar(int field) {
+		return scalars[field];
+	}
+
+	public String toString() {
+		return datatype;
+	}
+
+	/************************************************************
+	 *   Codecs
+	 ************************************************************/
+
+	/** Encodes and decodes the values of one field, except for scalars (see Builtin) */
+	static abstract class Codec {
+		/** Decodes a value, reusing previous (the current value of the field) if possible */
+		abstract Object read(ByteBuffer bb, Object previous);
+		abstract void write(ByteBuffer bb, Object value);
+		abstract int length(Object value);
+		abstract Object initial();
+
+		/** Returns a deep copy of value (immutable values are shared) */
+		Object copy(Object value) {
+			return value;
+		}
+
+		/** Compares two values; times and durations are compared by value, as they do not override equals */
+		boolean equals(Object a, Object b) {
+			return a.equals(b);
+		}
+
+		int hashCode(Object value) {
+			return value.hashCode();
+		}
+	}
+
+	/**
+	 * Builtin types, with the Java representation used by generated messages. Single numeric, bool and
+	 * char values (scalars) are held by DynamicMessage as the bits of a long: integers as their value,
+	 * bool as 0 or 1, and float32 and float64 as the raw bits of the double.
+	 */
+	enum Builtin {
+		BOOL(1) {
+			long readBits(ByteBuffer bb) { return bb.get() != 0 ? 1 : 0; }
+			void writeBits(ByteBuffer bb, long bits) { bb.put((byte) bits); }
+			Object box(long bits) { return bits != 0; }
+			long unbox(Object v) { return ((Boolean) v) ? 1 : 0; }
+			Object newArray(int n) { return new boolean[n]; }
+			void get(ByteBuffer bb, Object a, int i) { ((boolean[]) a)[i] = bb.get() != 0; }
+			void put(ByteBuffer bb, Object a, int i) { bb.put((byte) (((boolean[]) a)[i] ? 1 : 0)); }
+		},
+		CHAR(1) {
+			long readBits(ByteBuffer bb) { return bb.get() & 0xff; }
+			void writeBits(ByteBuffer bb, long bits) { bb.put((byte) bits); }
+			Object box(long bits) { return (char) bits; }
+			long unbox(Object v) { return (Character) v; }
+			Object newArray(int n) { return new char[n]; }
+			void get(ByteBuffer bb, Object a, int i) { ((char[]) a)[i] = (char) (bb.get() & 0xff); }
+			void put(ByteBuffer bb, Object a, int i) { bb.put((byte) ((char[]) a)[i]); }
+		},
+		UINT8(1) {
+			long readBits(ByteBuffer bb) { return bb.get() & 0xff; }
+			void writeBits(ByteBuffer bb, long bits) { bb.put((byte) bits); }
+			Object box(long bits) { return (short) bits; }
+			long unbox(Object v) { return (Short) v; }
+			Object newArray(int n) { return new short[n]; }
+			void get(ByteBuffer bb, Object a, int i) { ((short[]) a)[i] = (short) (bb.get() & 0xff); }
+			void put(ByteBuffer bb, Object a, int i) { bb.put((byte) ((short[]) a)[i]); }
+		},
+		INT8(1) {
+			long readBits(ByteBuffer bb) { return bb.get(); }
+			void writeBits(ByteBuffer bb, long bits) { bb.put((byte) bits); }
+			Object box(long bits) { return (byte) bits; }
+			long unbox(Object v) { return (Byte) v; }
+			Object newArray(int n) { return new byte[n]; }
+			void get(ByteBuffer bb, Object a, int i) { ((byte[]) a)[i] = bb.get(); }
+			void put(ByteBuffer bb, Object a, int i) { bb.put(((byte[]) a)[i]); }
+			void readArray(ByteBuffer bb, Object a, int n) { bb.get((byte[]) a, 0, n); }
+			void writeArray(ByteBuffer bb, Object a, int n) { bb.put((byte[]) a, 0, n); }
+		},
+		UINT16(2) {
+			long readBits(ByteBuffer bb) { return bb.getShort() & 0xffff; }
+			void writeBits(ByteBuffer bb, long bits) { bb.putShort((short) bits); }
+			Object box(long bits) { return (int) bits; }
+			long unbox(Object v) { return (Integer) v; }
+			Object newArray(int n) { return new int[n]; }
+			void get(ByteBuffer bb, Object a, int i) { ((int[]) a)[i] = bb.getShort() & 0xffff; }
+			void put(ByteBuffer bb, Object a, int i) { bb.putShort((short) ((int[]) a)[i]); }
+		},
+		INT16(2) {
+			long readBits(ByteBuffer bb) { return bb.getShort(); }
+			void writeBits(ByteBuffer bb, long bits) { bb.putShort((short) bits); }
+			Object box(long bits) { return (short) bits; }
+			long unbox(Object v) { return (Short) v; }
+			Object newArray(int n) { return new short[n]; }
+			void get(ByteBuffer bb, Object a, int i) { ((short[]) a)[i] = bb.getShort(); }
+			void put(ByteBuffer bb, Object a, int i) { bb.putShort(((short[]) a)[i]); }
+			void readArray(ByteBuffer bb, Object a, int n) { bb.asShortBuffer().get((short[]) a, 0, n); skip(bb, n); }
+			void writeArray(ByteBuffer bb, Object a, int n) { bb.asShortBuffer().put((short[]) a, 0, n); skip(bb, n); }
+		},
+		UINT32(4) {
+			long readBits(ByteBuffer bb) { return bb.getInt() & 0xffffffffL; }
+			void writeBits(ByteBuffer bb, long bits) { bb.putInt((int) bits); }
+			Object box(long bits) { return bits; }
+			long unbox(Object v) { return (Long) v; }
+			Object newArray(int n) { return new long[n]; }
+			void get(ByteBuffer bb, Object a, int i) { ((long[]) a)[i] = bb.getInt() & 0xffffffffL; }
+			void put(ByteBuffer bb, Object a, int i) { bb.putInt((int) ((long[]) a)[i]); }
+		},
+		INT32(4) {
+			long readBits(ByteBuffer bb) { return bb.getInt(); }
+			void writeBits(ByteBuffer bb, long bits) { bb.putInt((int) bits); }
+			Object box(long bits) { return (int) bits; }
+			long unbox(Object v) { return (Integer) v; }
+			Object newArray(int n) { return new int[n]; }
+			void get(ByteBuffer bb, Object a, int i) { ((int[]) a)[i] = bb.getInt(); }
+			void put(ByteBuffer bb, Object a, int i) { bb.putInt(((int[]) a)[i]); }
+			void readArray(ByteBuffer bb, Object a, int n) { bb.asIntBuffer().get((int[]) a, 0, n); skip(bb, n); }
+			void writeArray(ByteBuffer bb, Object a, int n) { bb.asIntBuffer().put((int[]) a, 0, n); skip(bb, n); }
+		},
+		INT64(8) {
+			long readBits(ByteBuffer bb) { return bb.getLong(); }
+			void writeBits(ByteBuffer bb, long bits) { bb.putLong(bits); }
+			Object box(long bits) { return bits; }
+			long unbox(Object v) { return (Long) v; }
+			Object newArray(int n) { return new long[n]; }
+			void get(ByteBuffer bb, Object a, int i) { ((long[]) a)[i] = bb.getLong(); }
+			void put(ByteBuffer bb, Object a, int i) { bb.putLong(((long[]) a)[i]); }
+			void readArray(ByteBuffer bb, Object a, int n) { bb.asLongBuffer().get((long[]) a, 0, n); skip(bb, n); }
+			void writeArray(ByteBuffer bb, Object a, int n) { bb.asLongBuffer().put((long[]) a, 0, n); skip(bb, n); }
+		},
+		FLOAT32(4) {
+			long readBits(ByteBuffer bb) { return Double.doubleToRawLongBits(bb.getFloat()); }
+			void writeBits(ByteBuffer bb, long bits) { bb.putFloat((float) Double.longBitsToDouble(bits)); }
+			Object box(long bits) { return (float) Double.longBitsToDouble(bits); }
+			long unbox(Object v) { return Double.doubleToRawLongBits((Float) v); }
+			Object newArray(int n) { return new float[n]; }
+			void get(ByteBuffer bb, Object a, int i) { ((float[]) a)[i] = bb.getFloat(); }
+			void put(ByteBuffer bb, Object a, int i) { bb.putFloat(((float[]) a)[i]); }
+			void readArray(ByteBuffer bb, Object a, int n) { bb.asFloatBuffer().get((float[]) a, 0, n); skip(bb, n); }
+			void writeArray(ByteBuffer bb, Object a, int n) { bb.asFloatBuffer().put((float[]) a, 0, n); skip(bb, n); }
+		},
+		FLOAT64(8) {
+			long readBits(ByteBuffer bb) { return Double.doubleToRawLongBits(bb.getDouble()); }
+			void writeBits(ByteBuffer bb, long bits) { bb.putDouble(Double.longBitsToDouble(bits)); }
+			Object box(long bits) { return Double.longBitsToDouble(bits); }
+			long unbox(Object v) { return Double.doubleToRawLongBits((Double) v); }
+			Object newArray(int n) { return new double[n]; }
+			void get(ByteBuffer bb, Object a, int i) { ((double[]) a)[i] = bb.getDouble(); }
+			void put(ByteBuffer bb, Object a, int i) { bb.putDouble(((double[]) a)[i]); }
+			void readArray(ByteBuffer bb, Object a, int n) { bb.asDoubleBuffer().get((double[]) a, 0, n); skip(bb, n); }
+			void writeArray(ByteBuffer bb, Object a, int n) { bb.asDoubleBuffer().put((double[]) a, 0, n); skip(bb, n); }
+		},
+		STRING(-1) {
+			Object read(ByteBuffer bb, Object previous) { return Message.Serialization.readString(bb, (String) previous); }
+			void write(ByteBuffer bb, Object v) { Message.Serialization.writeString(bb, (String) v); }
+			int length(Object v) { return 4 + Message.Serialization.encodedLength((String) v); }
+			Object initial() { return ""; }
+		},
+		TIME(8) {
+			Object read(ByteBuffer bb, Object previous) { return Message.Serialization.readTime(bb, (Time) previous); }
+			void write(ByteBuffer bb, Object v) { Message.Serialization.writeTime(bb, (Time) v); }
+			Object initial() { return new Time(); }
+			Object copy(Object v) { return new Time((Time) v); }
+			boolean equals(Object a, Object b) { return ((Time) a).sameAs((Time) b); }
+			int hashCode(Object v) { return TimeUnit.hashNsecs(((Time) v).totalNsecs()); }
+		},
+		DURATION(8) {
+			Object read(ByteBuffer bb, Object previous) { return Message.Serialization.readDuration(bb, (Duration) previous); }
+			void write(ByteBuffer bb, Object v) { Message.Serialization.writeDuration(bb, (Duration) v); }
+			Object initial() { return new Duration(); }
+			Object copy(Object v) { return new Duration((Duration) v); }
+			boolean equals(Object a, Object b) { return ((Duration) a).sameAs((Duration) b); }
+			int hashCode(Object v) { return TimeUnit.hashNsecs(((Duration) v).totalNsecs()); }
+		};
+
+		/** Serialized size of a single value, or -1 if it varies */
+		final int size;
+
+		Builtin(int size) {
+			this.size = size;
+		}
+
+		/** Returns whether values of this type are scalars, and arrays of it are primitive arrays */
+		boolean isPrimitive() {
+			return this != STRING && this != TIME && this != DURATION;
+		}
+
+		boolean isFloat() {
+			return this == FLOAT32 || this == FLOAT64;
+		}
+
+		// scalars
+		long readBits(ByteBuffer bb) { throw new UnsupportedOperationException(); }
+		void writeBits(ByteBuffer bb, long bits) { throw new UnsupportedOperationException(); }
+		Object box(long bits) { throw new UnsupportedOperationException(); }
+		long unbox(Object v) { throw new UnsupportedOperationException(); }
+
+		// strings, times and durations
+		Object read(ByteBuffer bb, Object previous) { throw new UnsupportedOperationException(); }
+		void write(ByteBuffer bb, Object v) { throw new UnsupportedOperationException(); }
+		Object initial() { throw new UnsupportedOperationException(); }
+
+		int length(Object v) {
+			return size;
+		}
+
+		Object copy(Object v) {
+			return v;
+		}
+
+		boolean equals(Object a, Object b) {
+			return a.equals(b);
+		}
+
+		int hashCode(Object v) {
+			return v.hashCode();
+		}
+
+		// element access of primitive arrays
+		Object newArray(int n) { throw new UnsupportedOperationException(); }
+		void get(ByteBuffer bb, Object a, int i) { throw new UnsupportedOperationException(); }
+		void put(ByteBuffer bb, Object a, int i) { throw new UnsupportedOperationException(); }
+
+		void readArray(ByteBuffer bb, Object a, int n) {
+			for (int i = 0; i < n; i++) get(bb, a, i);
+		}
+
+		void writeArray(ByteBuffer bb, Object a, int n) {
+			for (int i = 0; i < n; i++) put(bb, a, i);
+		}
+
+		/** Advances bb past n values that were transferred through a view buffer */
+		void skip(ByteBuffer bb, int n) {
+			bb.position(bb.position() + n * size);
+		}
+
+		static Builtin forName(String type) {
+			if (type.equals("byte")) return UINT8; // represented as short, like in generated messages
+			if (type.equals("uint64")) return INT64;
+			return valueOf(type.toUpperCase());
+		}
+	}
+
+	/** Strings, times and durations */
+	static final class BuiltinCodec extends Codec {
+		private final Builtin type;
+
+		BuiltinCodec(Builtin type) {
+			this.type = type;
+		}
+
+		Object read(ByteBuffer bb, Object previous) { return type.read(bb, previous); }
+		void write(ByteBuffer bb, Object value) { type.write(bb, value); }
+		int length(Object value) { return type.length(value); }
+		Object initial() { return type.initial(); }
+		Object copy(Object value) { return type.copy(value); }
+		boolean equals(Object a, Object b) { return type.equals(a, b); }
+		int hashCode(Object value) { return type.hashCode(value); }
+	}
+
+	/** Arrays of numeric and bool values, represented as primitive arrays */
+	static final class PrimitiveArrayCodec extends Codec {
+		private final Builtin type;
+		private final int fixedLength;
+		private final Class<?> arrayClass;
+
+		PrimitiveArrayCodec(Builtin type, int fixedLength) {
+			this.type = type;
+			this.fixedLength = fixedLength;
+			this.arrayClass = type.newArray(0).getClass();
+		}
+
+		Object read(ByteBuffer bb, Object previous) {
+			int n = fixedLength >= 0 ? fixedLength : bb.getInt();
+			Object a = previous;
+			if (a == null || a.getClass() != arrayClass || Array.getLength(a) != n) a = type.newArray(n);
+			type.readArray(bb, a, n);
+			return a;
+		}
+
+		void write(ByteBuffer bb, Object value) {
+			int n = Array.getLength(value);
+			if (fixedLength < 0) bb.putInt(n);
+			type.writeArray(bb, value, n);
+		}
+
+		int length(Object value) {
+			return (fixedLength < 0 ? 4 : 0) + Array.getLength(value) * type.size;
+		}
+
+		Object initial() {
+			return type.newArray(Math.max(fixedLength, 0));
+		}
+
+		Object copy(Object value) {
+			int n = Array.getLength(value);
+			Object c = type.newArray(n);
+			System.arraycopy(value, 0, c, 0, n);
+			return c;
+		}
+
+		boolean equals(Object a, Object b) {
+			return Arrays.deepEquals(new Object[] {a}, new Object[] {b}); // dispatches on the array type
+		}
+
+		int hashCode(Object value) {
+			return Arrays.deepHashCode(new Object[] {value});
+		}
+	}
+
+	/** Arrays of strings, times, durations and submessages, represented as Lists */
+	static final class ListCodec extends Codec {
+		private final Codec element;
+		private final int fixedLength;
+
+		ListCodec(Codec element, int fixedLength) {
+			this.element = element;
+			this.fixedLength = fixedLength;
+		}
+
+		@SuppressWarnings("unchecked")
+		Object read(ByteBuffer bb, Object previous) {
+			int n = fixedLength >= 0 ? fixedLength : bb.getInt();
+			// only ArrayLists are refilled: a list set by the application may well be immutable
+			List<Object> list;
+			if (previous instanceof ArrayList) {
+				list = (List<Object>) previous;
+				while (list.size() > n) list.remove(list.size() - 1);
+			} else {
+				list = new ArrayList<Object>(n);
+			}
+			for (int i = 0; i < n; i++) {
+				if (i < list.size()) list.set(i, element.read(bb, list.get(i)));
+				else list.add(element.read(bb, null));
+			}
+			return list;
+		}
+
+		void write(ByteBuffer bb, Object value) {
+			List<?> list = (List<?>) value;
+			if (fixedLength < 0) bb.putInt(list.size());
+			for (Object v : list) element.write(bb, v);
+		}
+
+		int length(Object value) {
+			int l = fixedLength < 0 ? 4 : 0;
+			for (Object v : (List<?>) value) l += element.length(v);
+			return l;
+		}
+
+		Object initial() {
+			List<Object> list = new ArrayList<Object>(Math.max(fixedLength, 0));
+			for (int i = 0; i < fixedLength; i++) list.add(element.initial());
+			return list;
+		}
+
+		Object copy(Object value) {
+			List<?> list = (List<?>) value;
+			List<Object> c = new ArrayList<Object>(list.size());
+			for (Object v : list) c.add(element.copy(v));
+			return c;
+		}
+
+		boolean equals(Object a, Object b) {
+			List<?> x = (List<?>) a, y = (List<?>) b;
+			if (x.size() != y.size()) return false;
+			for (int i = 0; i < x.size(); i++) {
+				if (!element.equals(x.get(i), y.get(i))) return false;
+			}
+			return true;
+		}
+
+		int hashCode(Object value) {
+			int h = 1;
+			for (Object v : (List<?>) value) h = 31 * h + element.hashCode(v);
+			return h;
+		}
+	}
+
+	static final class MessageCodec extends Codec {
+		private final DynamicMessageType type;
+
+		MessageCodec(DynamicMessageType type) {
+			this.type = type;
+		}
+
+		Object read(ByteBuffer bb, Object previous) {
+			DynamicMessage m;
+			if (previous instanceof DynamicMessage && ((DynamicMessage) previous).getType() == type)
+				m = (DynamicMessage) previous;
+			else
+				m = new DynamicMessage(type);
+			m.deserialize(bb);
+			return m;
+		}
+
+		void write(ByteBuffer bb, Object value) {
+			((DynamicMessage) value).serialize(bb, 0);
+		}
+
+		int length(Object value) {
+			return ((DynamicMessage) value).serializationLength();
+		}
+
+		Object initial() {
+			return new DynamicMessage(type);
+		}
+
+		Object copy(Object value) {
+			return ((DynamicMessage) value).clone();
+		}
+	}
+
+	/************************************************************
+	 *   Parsing
+	 ************************************************************/
+
+	/**
+	 * Parses a full message definition: the fields of the message itself, followed by the definition of
+	 * each submessage type, in sections that start with a line of '=' and a line "MSG: package/Type".
+	 */
+	private static final class Parser {
+		// field lines (type, name) and definition text of each type, the message itself first
+		private final Map<String, List<String[]>> fields = new LinkedHashMap<String, List<String[]>>();
+		private final Map<String, String> texts = new HashMap<String, String>();
+		private final Map<String, DynamicMessageType> types = new HashMap<String, DynamicMessageType>();
+		private final String definition;
+
+		Parser(String definition) {
+			this.definition = definition;
+		}
+
+		DynamicMessageType parse(String datatype, String md5sum) {
+			String current = datatype;
+			List<String[]> lines = new ArrayList<String[]>();
+			StringBuilder text = new StringBuilder();
+			for (String line : definition.split("\n")) {
+				String trimmed = line.trim();
+				if (trimmed.startsWith("==")) {
+					add(current, lines, text);
+					current = null;
+					lines = new ArrayList<String[]>();
+					text = new StringBuilder();
+					continue;
+				}
+				if (current == null && trimmed.startsWith("MSG:")) {
+					current = trimmed.substring(4).trim();
+					continue;
+				}
+				text.append(line).append('\n');
+				String[] field = parseField(trimmed);
+				if (field != null) lines.add(field);
+			}
+			add(current, lines, text);
+			return compile(datatype, md5sum);
+		}
+
+		private void add(String datatype, List<String[]> lines, StringBuilder text) {
+			if (datatype == null) return;
+			fields.put(datatype, lines);
+			texts.put(datatype, text.toString());
+		}
+
+		/** Returns the type and name of the field declared on line, or null if it declares none */
+		private static String[] parseField(String line) {
+			int comment = line.indexOf('#');
+			String declaration = (comment < 0 ? line : line.substring(0, comment)).trim();
+			if (declaration.length() == 0) return null;
+			String[] tokens = declaration.split("\\s+", 2);
+			if (tokens.length != 2) throw new IllegalArgumentException("Invalid message definition line: " + line);
+			if (tokens[1].indexOf('=') >= 0) return null; // constant
+			return new String[] {tokens[0], tokens[1].trim()};
+		}
+
+		private DynamicMessageType compile(String datatype, String md5sum) {
+			DynamicMessageType type = types.get(datatype);
+			if (type != null) return type;
+			List<String[]> lines = fields.get(datatype);
+			if (lines == null) throw new IllegalArgumentException("No definition of message type " + datatype);
+
+			String pkg = datatype.substring(0, datatype.indexOf('/') + 1);
+			Codec[] codecs = new Codec[lines.size()];
+			Builtin[] scalars = new Builtin[lines.size()];
+			for (int i = 0; i < codecs.length; i++) {
+				String fieldType = lines.get(i)[0];
+				if (BUILTIN_TYPES.contains(fieldType) && Builtin.forName(fieldType).isPrimitive())
+					scalars[i] = Builtin.forName(fieldType);
+				else
+					codecs[i] = codec(pkg, fieldType);
+			}
+			boolean nested = md5sum == null;
+			type = new DynamicMessageType(datatype, nested ? "*" : md5sum, nested ? nestedDefinition(datatype) : definition,
+			                              lines, codecs, scalars);
+			types.put(datatype, type);
+			return type;
+		}
+
+		private Codec codec(String pkg, String fieldType) {
+			int bracket = fieldType.indexOf('[');
+			String base = bracket < 0 ? fieldType : fieldType.substring(0, bracket);
+			Codec element;
+			Builtin builtin = null;
+			if (BUILTIN_TYPES.contains(base)) {
+				builtin = Builtin.forName(base);
+				element = new BuiltinCodec(builtin);
+			} else {
+				element = new MessageCodec(compile(resolve(pkg, base), null));
+			}
+			if (bracket < 0) return element;
+
+			String length = fieldType.substring(bracket + 1, fieldType.length() - 1).trim();
+			int fixedLength = length.length() == 0 ? -1 : Integer.parseInt(length);
+			if (builtin != null && builtin.isPrimitive()) return new PrimitiveArrayCodec(builtin, fixedLength);
+			return new ListCodec(element, fixedLength);
+		}
+
+		/** Returns the full name of a submessage type referenced from package pkg ("name/") */
+		private String resolve(String pkg, String type) {
+			if (type.indexOf('/') >= 0) return type;
+			if (type.equals("Header")) return fields.containsKey("roslib/Header") ? "roslib/Header" : "std_msgs/Header";
+			return pkg + type;
+		}
+
+		/** Definition of a submessage type: its own fields, followed by the sections of the types it uses */
+		private String nestedDefinition(String datatype) {
+			Set<String> used = new HashSet<String>();
+			addUsedTypes(datatype, used);
+			StringBuilder s = new StringBuilder(texts.get(datatype));
+			for (String other : fields.keySet()) {
+				if (used.contains(other))
+					s.append(SEPARATOR).append("MSG: ").append(other).append('\n').append(texts.get(other));
+			}
+			return s.toString();
+		}
+
+		private void addUsedTypes(String datatype, Set<String> used) {
+			String pkg = datatype.substring(0, datatype.indexOf('/') + 1);
+			for (String[] field : fields.get(datatype)) {
+				int bracket = field[0].indexOf('[');
+				String base = bracket < 0 ? field[0] : field[0].substring(0, bracket);
+				if (!BUILTIN_TYPES.contains(base) && used.add(resolve(pkg, base)))
+					addUsedTypes(resolve(pkg, base), used);
+			}
+		}
+	}
+}
@@ -0,0 +1,148 @@
+/*
+ * Software License Agreement (BSD License)
+ *
+ *  Copyright (c) 2008, Willow Garage, Inc.
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following
+ *     disclaimer in the documentation and/or other materials provided
+ *     with the distribution.
+ *   * Neither the name of Willow Garage, Inc. nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ *  FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ *  COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ *  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ *  BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ *  CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ *  ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package ros.communication;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Projection of a message type onto the fields a consumer needs, for decoding messages with
+ * {@link Message#deserialize(java.nio.ByteBuffer, FieldMask)}. Fields are selected by name, and fields of
+ * submessages by dotted paths such as "header.stamp"; naming a submessage itself selects all of its fields.
+ *
+ * Fields that are not selected are skipped over without being decoded, and keep their previous values.
+ * Selecting a name that the message type does not have raises an IllegalArgumentException when the
+ * first message is decoded.
+ */
+public class FieldMask {
+	/** Selects no fields at all */
+	public static final FieldMask NONE = new FieldMask();
+
+	/**
+	 * Selection of a mask for the fields of one message type, indexed by the position of the field in
+	 * the message definition.
+	 */
+	public static final class Projection {
+		private final String[] names;
+		private final boolean[] included;
+		private final FieldMask[] submasks;
+
+		private Projection(String[] names, boolean[] included, FieldMask[] submasks) {
+			this.names = names;
+			this.included = included;
+			this.submasks = submasks;
+		}
+
+		public boolean includes(int field) {
+			return included[field];
+		}
+
+		/** Returns the mask for the fields of submessage field, or null if it is selected completely */
+		public FieldMask submask(int field) {
+			return submasks[field];
+		}
+	}
+
+	// selected field names, mapped to the mask of their subfields, or to null if selected completely
+	private final Map<String, FieldMask> fields = new HashMap<String, FieldMask>();
+	// projections computed so far, one per field names array (copied on write, as it rarely changes)
+	private volatile Projection[] projections = new Projection[0];
+
+	public FieldMask(String... paths) {
+		for (String path : paths)
+			add(path);
+	}
+
+	private void add(String path) {
+		int dot = path.indexOf('.');
+		if (dot < 0) {
+			fields.put(path, null);
+			return;
+		}
+		String name = path.substring(0, dot);
+		FieldMask submask = fields.get(name);
+		if (submask == null) {
+			if (fields.containsKey(name)) return; // already selected completely
+			submask = new FieldMask();
+			fields.put(name, submask);
+		}
+		submask.add(path.substring(dot + 1));
+	}
+
+	/**
+	 * Returns the projection onto a message type with the given field names. Called by generated
+	 * messages, which pass the same array for every call, so that the projection is only computed for
+	 * the first message of each type the mask is used with.
+	 */
+	public Projection project(String[] fieldNames) {
+		for (Projection p : projections) {
+			if (p.names == fieldNames) return p;
+		}
+		Projection p = computeProjection(fieldNames);
+		synchronized (this) {
+			Projection[] old = projections;
+			Projection[] grown = new Projection[old.length + 1];
+			System.arraycopy(old, 0, grown, 0, old.length);
+			grown[old.length] = p;
+			projections = grown;
+		}
+		return p;
+	}
+
+	private Projection computeProjection(String[] fieldNames) {
+		boolean[] included = new boolean[fieldNames.length];
+		FieldMask[] submasks = new FieldMask[fieldNames.length];
+		int found = 0;
+		for (int i = 0; i < fieldNames.length; i++) {
+			if (fields.containsKey(fieldNames[i])) {
+				included[i] = true;
+				submasks[i] = fields.get(fieldNames[i]);
+				found++;
+			}
+		}
+		if (found != fields.size()) {
+			for (String name : fields.keySet()) {
+				if (!Arrays.asList(fieldNames).contains(name))
+					throw new IllegalArgumentException("Unknown field " + name);
+			}
+		}
+		return new Projection(fieldNames, included, submasks);
+	}
+
+	public String toString() {
+		return fields.toString();
+	}
+}
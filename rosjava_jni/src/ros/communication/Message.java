@@ -37,10 +37,22 @@
 
 package ros.communication;
 
+import java.lang.management.ManagementFactory;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import ros.Ros;
 
 public abstract class Message implements Cloneable {
+	private static final ThreadLocal<ByteBuffer> serializationBuffer = new ThreadLocal<ByteBuffer>();
+
+	/** Pool this message was acquired from and must be returned to, or null */
+	transient MessagePool<?> pool;
+
 	public static String __s_getDataType() { throw new UnsupportedOperationException(); }
 	public static String __s_getMD5Sum() { throw new UnsupportedOperationException(); }
 	public static String __s_getMessageDefinition() { throw new UnsupportedOperationException(); }	
@@ -65,29 +77,183 @@ public abstract class Message implements Cloneable {
 		return ret;
 	}
 	
+	/**
+	 * Serializes this message at the current position of bb, which must be little-endian and have at
+	 * least serializationLength() bytes remaining. Returns the number of bytes written.
+	 */
+	public int serializeInto(ByteBuffer bb, int seq) {
+		if (bb.order() != ByteOrder.LITTLE_ENDIAN) throw new IllegalArgumentException("Buffer must be little-endian");
+		int len = serializationLength();
+		if (bb.remaining() < len) throw new java.nio.BufferOverflowException();
+		int start = bb.position();
+		serialize(bb, seq);
+		if (bb.position() - start != len) throw new RuntimeException("Non-matching serialization length!");
+		return len;
+	}
+
+	/**
+	 * Serializes this message into a direct buffer owned by the calling thread, which grows on demand
+	 * and is overwritten by the next call on the same thread. Returns the buffer, with position 0 and
+	 * the limit at the end of the message.
+	 */
+	public ByteBuffer serializeInto(int seq) {
+		int len = serializationLength();
+		ByteBuffer bb = serializationBuffer.get();
+		if (bb == null || bb.capacity() < len) {
+			int capacity = Math.max(len, bb == null ? 1024 : 2 * bb.capacity());
+			bb = ByteBuffer.allocateDirect(capacity).order(ByteOrder.LITTLE_ENDIAN);
+			serializationBuffer.set(bb);
+		}
+		bb.clear();
+		serialize(bb, seq);
+		if (bb.position() != len) throw new RuntimeException("Non-matching serialization length!");
+		bb.flip();
+		return bb;
+	}
+
 	public void deserialize(byte [] data) {
 		//			System.out.println("Read " + data.length + " bytes: ");
 		//			for(int i = 0; i < Math.min(100, data.length); i++) System.out.format("%x,", data[i]);
 		ByteBuffer bb = ByteBuffer.wrap(data);
 		deserialize(bb.asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN));
 	}
-		
+
+	/**
+	 * Decodes only the fields selected by mask (all fields if mask is null), and skips over the others.
+	 * Messages that do not support projection decode all fields.
+	 */
+	public void deserialize(ByteBuffer bb, FieldMask mask) {
+		deserialize(bb);
+	}
+
 	public Message clone() {
 		try {
-			return (Message) super.clone();
+			Message m = (Message) super.clone();
+			m.pool = null;
+			return m;
 		} catch (CloneNotSupportedException e) {
 			throw new RuntimeException("Clone of message not supported?!");
 		}
 	}
 	
 	public abstract void setTo(Message m);
+
+	/**
+	 * Returns this message to the pool it was acquired from, after which it must no longer be used.
+	 * Does nothing if the message does not come from a pool (or was released already).
+	 */
+	public void release() {
+		MessagePool<?> p = pool;
+		if (p == null) return;
+		pool = null;
+		p.release(this);
+	}
 	
 	public static class Serialization {
+		private static final Charset UTF8 = Charset.forName("UTF-8");
+		private static final ThreadLocal<char[]> charBuffer = new ThreadLocal<char[]>();
+		private static volatile StringCache stringCache;
+		/** Name under which the string cache is registered with the platform MBean server */
+		private static final String STRING_CACHE_NAME = "rosjava:type=StringCache";
+
+		static {
+			int size = Integer.getInteger("rosjava.stringCache", 0);
+			if (size > 0) setStringCache(new StringCache(size));
+		}
+
+		/**
+		 * Sets the cache through which strings are decoded, or disables caching if cache is null. The cache
+		 * replaces the previous one in the platform MBean server, under the name "rosjava:type=StringCache".
+		 */
+		public static synchronized void setStringCache(StringCache cache) {
+			stringCache = cache;
+			try {
+				MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+				ObjectName name = new ObjectName(STRING_CACHE_NAME);
+				if (server.isRegistered(name)) server.unregisterMBean(name);
+				if (cache != null) server.registerMBean(cache, name);
+			} catch (Exception e) {
+				Ros.getInstance().logWarn("Could not register string cache: " + e);
+			}
+		}
+
+		/** Returns the cache through which strings are decoded, or null if caching is disabled. */
+		public static StringCache getStringCache() {
+			return stringCache;
+		}
+
+		/** UTF-8 encoding of a string, which is reused for as long as the string is the same instance. */
+		public static final class EncodedString {
+			public final String string;
+			public final byte[] bytes;
+
+			private EncodedString(String string) {
+				this.string = string;
+				this.bytes = string.getBytes(UTF8);
+			}
+		}
+
+		/** Returns cached if it encodes s, or a new encoding of s otherwise. */
+		public static EncodedString encode(EncodedString cached, String s) {
+			if (cached != null && cached.string == s) return cached;
+			return new EncodedString(s);
+		}
+
 		public static String readString(ByteBuffer bb) {
 			int len = bb.getInt();
-			byte[]  bytes = new byte[len];
-			bb.get(bytes);
-			return new String(bytes);
+			int pos = bb.position();
+			String s = decodeString(bb, pos, len);
+			bb.position(pos + len);
+			return s;
+		}
+
+		/** Like readString(bb), but returns previous instead of a new string if its contents are unchanged. */
+		public static String readString(ByteBuffer bb, String previous) {
+			int len = bb.getInt();
+			int pos = bb.position();
+			String s = previous != null && isASCII(bb, pos, len, previous) ? previous : decodeString(bb, pos, len);
+			bb.position(pos + len);
+			return s;
+		}
+
+		// Whether the len bytes at the given absolute position of bb are the ASCII encoding of s
+		private static boolean isASCII(ByteBuffer bb, int pos, int len, String s) {
+			if (s.length() != len) return false;
+			for (int i = 0; i < len; i++) {
+				byte b = bb.get(pos + i);
+				if (b < 0 || b != s.charAt(i)) return false;
+			}
+			return true;
+		}
+
+		/**
+		 * Decodes the len UTF-8 bytes at the given absolute position of bb, without changing its position.
+		 * Goes through the string cache if one is set.
+		 */
+		public static String decodeString(ByteBuffer bb, int pos, int len) {
+			StringCache cache = stringCache;
+			if (cache != null) return cache.get(bb, pos, len);
+			return decodeUTF8(bb, pos, len);
+		}
+
+		static String decodeUTF8(ByteBuffer bb, int pos, int len) {
+			if (bb.hasArray()) return new String(bb.array(), bb.arrayOffset() + pos, len, UTF8);
+			char[] chars = charBuffer.get();
+			if (chars == null || chars.length < len) {
+				chars = new char[Math.max(len, 256)];
+				charBuffer.set(chars);
+			}
+			for (int i = 0; i < len; i++) {
+				byte b = bb.get(pos + i);
+				if (b < 0) {
+					// not ASCII: leave it to the decoder
+					ByteBuffer slice = bb.duplicate();
+					slice.limit(pos + len).position(pos);
+					return UTF8.decode(slice).toString();
+				}
+				chars[i] = (char) b;
+			}
+			return new String(chars, 0, len);
 		}
 
 		public static Time readTime(ByteBuffer bb)  {
@@ -100,11 +266,81 @@ public abstract class Message implements Cloneable {
 			return t;
 		}
 
-		
+		/** Like readTime(bb), but reads into t unless it is null. */
+		public static Time readTime(ByteBuffer bb, Time t)  {
+			if (t == null) return readTime(bb);
+			t.secs = bb.getInt();
+			t.nsecs = bb.getInt();
+			return t;
+		}
+
+		/** Like readDuration(bb), but reads into t unless it is null. */
+		public static Duration readDuration(ByteBuffer bb, Duration t)  {
+			if (t == null) return readDuration(bb);
+			t.secs = bb.getInt();
+			t.nsecs = bb.getInt();
+			return t;
+		}
+
+		/** Reads a time or duration as a number of nanoseconds. */
+		public static long readNsecs(ByteBuffer bb)  {
+			int secs = bb.getInt();
+			return TimeUnit.toNsecs(secs, bb.getInt());
+		}
+
+		/** Returns the length of the UTF-8 encoding of s (unpaired surrogates are encoded as '?'). */
+		public static int encodedLength(String s) {
+			int len = s.length();
+			int n = len;
+			for (int i = 0; i < len; i++) {
+				char c = s.charAt(i);
+				if (c < 0x80) continue;
+				if (c < 0x800) n += 1;
+				else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1))) {
+					n += 2;
+					i++;
+				}
+				else if (!isSurrogate(c)) n += 2;
+			}
+			return n;
+		}
+
+		/** Writes s in UTF-8 in a single pass, patching in the length afterwards. */
 		public static void writeString(ByteBuffer bb, String s)  {
-			byte [] bytes = s.getBytes();
-			bb.putInt(bytes.length);
-			bb.put(bytes);
+			int start = bb.position();
+			bb.putInt(0);
+			int len = s.length();
+			for (int i = 0; i < len; i++) {
+				char c = s.charAt(i);
+				if (c < 0x80) {
+					bb.put((byte) c);
+				} else if (c < 0x800) {
+					bb.put((byte) (0xc0 | (c >> 6)));
+					bb.put((byte) (0x80 | (c & 0x3f)));
+				} else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1))) {
+					int cp = Character.toCodePoint(c, s.charAt(++i));
+					bb.put((byte) (0xf0 | (cp >> 18)));
+					bb.put((byte) (0x80 | ((cp >> 12) & 0x3f)));
+					bb.put((byte) (0x80 | ((cp >> 6) & 0x3f)));
+					bb.put((byte) (0x80 | (cp & 0x3f)));
+				} else if (isSurrogate(c)) {
+					bb.put((byte) '?');
+				} else {
+					bb.put((byte) (0xe0 | (c >> 12)));
+					bb.put((byte) (0x80 | ((c >> 6) & 0x3f)));
+					bb.put((byte) (0x80 | (c & 0x3f)));
+				}
+			}
+			bb.putInt(start, bb.position() - start - 4);
+		}
+
+		public static void writeString(ByteBuffer bb, EncodedString s)  {
+			bb.putInt(s.bytes.length);
+			bb.put(s.bytes);
+		}
+
+		private static boolean isSurrogate(char c) {
+			return c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE;
 		}
 		
 		public static void writeTime(ByteBuffer bb, Time o)   {
@@ -116,5 +352,11 @@ public abstract class Message implements Cloneable {
 			bb.putInt(o.secs);
 			bb.putInt(o.nsecs);
 		}
+
+		/** Writes a time or duration given as a number of nanoseconds. */
+		public static void writeNsecs(ByteBuffer bb, long nanos)   {
+			bb.putInt(TimeUnit.secsOf(nanos));
+			bb.putInt(TimeUnit.nsecsOf(nanos));
+		}
 	}
 }
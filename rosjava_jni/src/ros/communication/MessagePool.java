@@ -0,0 +1,112 @@
+/*
+ * Software License Agreement (BSD License)
+ *
+ *  Copyright (c) 2008, Willow Garage, Inc.
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following
+ *     disclaimer in the documentation and/or other materials provided
+ *     with the distribution.
+ *   * Neither the name of Willow Garage, Inc. nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ *  FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ *  COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ *  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ *  BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ *  CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ *  ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package ros.communication;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded pool of message instances, so that high-rate subscriptions deserialize into recycled messages
+ * instead of new ones. New instances are cloned from a template when the pool is empty.
+ *
+ * A message obtained from the pool is owned by its receiver until it calls {@link Message#release()},
+ * after which the message must no longer be used. Messages that are never released are simply
+ * collected; releasing them is only needed for reuse.
+ *
+ * A reused message is decoded in place: its Time instances, Lists and list elements are overwritten rather
+ * than replaced, so references kept to fields of an earlier message change with the next message.
+ */
+public class MessagePool<M extends Message> {
+	private final M template;
+	private final int capacity;
+	private final ConcurrentLinkedQueue<M> free = new ConcurrentLinkedQueue<M>();
+	private final AtomicInteger size = new AtomicInteger();
+	private final AtomicLong created = new AtomicLong();
+	private final AtomicLong recycled = new AtomicLong();
+
+	/** Creates a pool that keeps at most capacity released instances of template's type. */
+	public MessagePool(M template, int capacity) {
+		this.template = template;
+		this.capacity = capacity;
+	}
+
+	/** Returns a released instance if available, or a clone of the template otherwise. */
+	@SuppressWarnings("unchecked")
+	public M acquire() {
+		M m = free.poll();
+		if (m != null) {
+			size.decrementAndGet();
+			recycled.incrementAndGet();
+		} else {
+			m = (M) template.clone();
+			created.incrementAndGet();
+		}
+		m.pool = this;
+		return m;
+	}
+
+	/**
+	 * Returns m to the pool, unless the pool is full. Called through {@link Message#release()}, which only
+	 * passes messages that were acquired from this pool (and are thus of type M).
+	 */
+	@SuppressWarnings("unchecked")
+	void release(Message m) {
+		if (size.incrementAndGet() > capacity) {
+			size.decrementAndGet();
+			return;
+		}
+		free.offer((M) m);
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/** Number of released instances in the pool */
+	public int getSize() {
+		return size.get();
+	}
+
+	/** Number of instances created because the pool was empty */
+	public long getCreated() {
+		return created.get();
+	}
+
+	/** Number of instances handed out again after they were released */
+	public long getRecycled() {
+		return recycled.get();
+	}
+}
@@ -0,0 +1,118 @@
+/*
+ * Software License Agreement (BSD License)
+ *
+ *  Copyright (c) 2008, Willow Garage, Inc.
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following
+ *     disclaimer in the documentation and/or other materials provided
+ *     with the distribution.
+ *   * Neither the name of Willow Garage, Inc. nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ *  FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ *  COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ *  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ *  BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ *  CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ *  ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package ros.communication;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Read-only flyweight over a serialized message. Generated messages contain a nested View class that
+ * decodes fields directly from a ByteBuffer when they are accessed, without copying the buffer or creating
+ * the message object. Offsets of fields behind variable-length fields are computed on first access.
+ *
+ * A view is only valid as long as the contents of the buffer it wraps; in particular, a view of a buffer
+ * passed to a callback must not be used after the callback returns. Call materialize() to obtain a
+ * message that can be retained. Views can be reused for other buffers by wrapping them again.
+ */
+public abstract class MessageView<M extends Message> {
+	/** Little-endian buffer containing the serialized message */
+	protected ByteBuffer buffer;
+	/** Absolute position of the serialized message in the buffer */
+	protected int offset;
+
+	/** Wraps the message that starts at the current position of the buffer. */
+	public MessageView<M> wrap(ByteBuffer bb) {
+		return wrap(bb, bb.position());
+	}
+
+	/** Wraps the message that starts at the given absolute position of the buffer. */
+	public MessageView<M> wrap(ByteBuffer bb, int offset) {
+		this.buffer = (bb.order() == ByteOrder.LITTLE_ENDIAN) ? bb : bb.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		this.offset = offset;
+		reset();
+		return this;
+	}
+
+	/** Returns the wrapped buffer. */
+	public ByteBuffer byteBuffer() {
+		return buffer;
+	}
+
+	/** Returns the absolute position of the wrapped message in the buffer. */
+	public int byteOffset() {
+		return offset;
+	}
+
+	/** Returns the serialized length of the wrapped message. */
+	public abstract int serializationLength();
+
+	/** Decodes the wrapped message into a new message object. */
+	public abstract M materialize();
+
+	/** Decodes the wrapped message into the given message object. */
+	public void materializeInto(M m) {
+		ByteBuffer bb = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		bb.position(offset);
+		m.deserialize(bb);
+	}
+
+	/** Discards cached offsets after the view was (re)wrapped. */
+	protected abstract void reset();
+
+	/** Reads the string at the given absolute position. */
+	protected String readString(int pos) {
+		return Message.Serialization.decodeString(buffer, pos + 4, buffer.getInt(pos));
+	}
+
+	/** Returns the absolute position behind the string at the given absolute position. */
+	protected int skipString(int pos) {
+		return pos + 4 + buffer.getInt(pos);
+	}
+
+	/** Reads the time at the given absolute position. */
+	protected Time readTime(int pos) {
+		return new Time(buffer.getInt(pos), buffer.getInt(pos + 4));
+	}
+
+	/** Reads the duration at the given absolute position. */
+	protected Duration readDuration(int pos) {
+		return new Duration(buffer.getInt(pos), buffer.getInt(pos + 4));
+	}
+
+	/** Reads the time or duration at the given absolute position as a number of nanoseconds. */
+	protected long readNsecs(int pos) {
+		return TimeUnit.toNsecs(buffer.getInt(pos), buffer.getInt(pos + 4));
+	}
+}
@@ -0,0 +1,138 @@
+/*
+ * Software License Agreement (BSD License)
+ *
+ *  Copyright (c) 2008, Willow Garage, Inc.
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following
+ *     disclaimer in the documentation and/or other materials provided
+ *     with the distribution.
+ *   * Neither the name of Willow Garage, Inc. nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ *  FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ *  COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ *  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ *  BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ *  CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ *  ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package ros.communication;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of decoded strings, keyed by their serialized (UTF-8) bytes, so that repeated frame IDs
+ * and other recurring identifiers decode to a shared String instance. Lookups hash and compare the bytes
+ * in the buffer, and only allocate on a miss.
+ *
+ * The cache is direct-mapped: each entry replaces any string that hashes to the same slot. It is
+ * enabled with {@link Message.Serialization#setStringCache(StringCache)}, or by setting the system
+ * property rosjava.stringCache to the number of entries. The enabled cache is registered with the platform
+ * MBean server as "rosjava:type=StringCache", through which its hit rate can be monitored.
+ */
+public class StringCache implements StringCacheMBean {
+	private static final class Entry {
+		final int hash;
+		final byte[] bytes;
+		final String string;
+
+		Entry(int hash, byte[] bytes, String string) {
+			this.hash = hash;
+			this.bytes = bytes;
+			this.string = string;
+		}
+	}
+
+	private final Entry[] entries;
+	private final int maxLength;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/** Creates a cache of at least size entries, for strings of at most 64 bytes. */
+	public StringCache(int size) {
+		this(size, 64);
+	}
+
+	public StringCache(int size, int maxLength) {
+		if (size <= 0) throw new IllegalArgumentException("Cache size must be positive");
+		int capacity = Integer.highestOneBit(size);
+		if (capacity < size) capacity <<= 1;
+		this.entries = new Entry[capacity];
+		this.maxLength = maxLength;
+	}
+
+	/**
+	 * Returns the string encoded by the len bytes at the given absolute position of bb, from the cache if
+	 * possible. Strings longer than the maximum length are decoded without caching.
+	 */
+	public String get(ByteBuffer bb, int pos, int len) {
+		if (len > maxLength) return Message.Serialization.decodeUTF8(bb, pos, len);
+		int hash = 1;
+		for (int i = 0; i < len; i++) hash = 31 * hash + bb.get(pos + i);
+		int index = (hash ^ (hash >>> 16)) & (entries.length - 1);
+
+		Entry e = entries[index];
+		if (e != null && e.hash == hash && matches(e.bytes, bb, pos, len)) {
+			hits.incrementAndGet();
+			return e.string;
+		}
+		misses.incrementAndGet();
+		byte[] bytes = new byte[len];
+		for (int i = 0; i < len; i++) bytes[i] = bb.get(pos + i);
+		String s = Message.Serialization.decodeUTF8(ByteBuffer.wrap(bytes), 0, len);
+		entries[index] = new Entry(hash, bytes, s);
+		return s;
+	}
+
+	private static boolean matches(byte[] bytes, ByteBuffer bb, int pos, int len) {
+		if (bytes.length != len) return false;
+		for (int i = 0; i < len; i++) {
+			if (bytes[i] != bb.get(pos + i)) return false;
+		}
+		return true;
+	}
+
+	public int getSize() {
+		return entries.length;
+	}
+
+	public int getMaxLength() {
+		return maxLength;
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public double getHitRate() {
+		long h = hits.get();
+		long total = h + misses.get();
+		return total == 0 ? 0 : (double) h / total;
+	}
+
+	public void resetCounters() {
+		hits.set(0);
+		misses.set(0);
+	}
+}
@@ -59,6 +59,12 @@ public class Time extends TimeUnit {
 		this.secs = t.secs;
 		this.nsecs = t.nsecs;
 	}
+
+	public static Time fromNsecs(long nanos) {
+		Time t = new Time();
+		t.setTotalNsecs(nanos);
+		return t;
+	}
 	
 	public Time add (Duration d) {
 		return new Time(secs + d.secs,nsecs + d.nsecs);
@@ -72,21 +78,45 @@ public class Time extends TimeUnit {
 		return new Duration(secs - t.secs,nsecs - t.nsecs);
 	}
 
+	/** Sets this time to t, and returns this. */
+	public Time set(Time t) {
+		secs = t.secs;
+		nsecs = t.nsecs;
+		return this;
+	}
+
+	/** Adds d to this time in place, and returns this. */
+	public Time increment(Duration d) {
+		setTotalNsecs(totalNsecs() + d.totalNsecs());
+		return this;
+	}
+
+	/** Subtracts d from this time in place, and returns this. */
+	public Time decrement(Duration d) {
+		setTotalNsecs(totalNsecs() - d.totalNsecs());
+		return this;
+	}
+
 	public boolean laterThan(Time t) {
-		normalize();
-		t.normalize();
-		return (secs > t.secs) || ((secs == t.secs) && nsecs > t.nsecs);
+		return totalNsecs() > t.totalNsecs();
 	}
 
 	public static Time now() { return Ros.getInstance().now(); }
+
+	/** Returns the current time in nanoseconds, without creating a Time. */
+	public static long nowNsecs() { return Ros.getInstance().nowNsecs(); }
 	
 	public boolean inFuture() {
-		normalize();
-		return laterThan(now());
+		return totalNsecs() > nowNsecs();
 	}
 	
 	public boolean hasElapsed(Duration d) {
-		return now().subtract(this).isLonger(d);
+		return nowNsecs() - totalNsecs() > d.totalNsecs();
+	}
+
+	/** Returns true if t is the same point in time as this time, ignoring normalization. */
+	public boolean sameAs(Time t) {
+		return totalNsecs() == t.totalNsecs();
 	}
 
 	public String toString() {
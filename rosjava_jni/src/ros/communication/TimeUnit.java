@@ -38,27 +38,98 @@
 
 package ros.communication;
 
+import java.util.List;
+
 public abstract class TimeUnit implements Cloneable {
+	public static final long NSECS_PER_SEC = 1000000000L;
+
 	public int secs;
 	public int nsecs;
 	
 	public long totalNsecs() { 
 		return ((long) secs) * 1000000000 + nsecs;
 	}
+
+	/** Sets this time to the given number of nanoseconds, normalized. */
+	public void setTotalNsecs(long nanos) {
+		secs = secsOf(nanos);
+		nsecs = nsecsOf(nanos);
+	}
+
+	/** Returns the total number of nanoseconds of the given seconds and nanoseconds. */
+	public static long toNsecs(int secs, int nsecs) {
+		return ((long) secs) * NSECS_PER_SEC + nsecs;
+	}
+
+	/** Returns the seconds part of the given number of nanoseconds (rounded towards negative infinity). */
+	public static int secsOf(long nanos) {
+		long secs = nanos / NSECS_PER_SEC;
+		if (nanos % NSECS_PER_SEC < 0) secs--;
+		return (int) secs;
+	}
+
+	/** Returns the nanoseconds part of the given number of nanoseconds, in [0, 1e9). */
+	public static int nsecsOf(long nanos) {
+		long nsecs = nanos % NSECS_PER_SEC;
+		return (int) (nsecs < 0 ? nsecs + NSECS_PER_SEC : nsecs);
+	}
+
+	public static double toSeconds(long nanos) {
+		return (double) nanos / NSECS_PER_SEC;
+	}
+
+	public static long fromSeconds(double secs) {
+		return (long) (secs * NSECS_PER_SEC);
+	}
 	
+	/** Returns whether a and b hold the same times, in order. Used by equals of generated messages. */
+	public static boolean sameValues(List<? extends TimeUnit> a, List<? extends TimeUnit> b) {
+		if (a.size() != b.size()) return false;
+		for (int i = 0; i < a.size(); i++) {
+			if (a.get(i).totalNsecs() != b.get(i).totalNsecs()) return false;
+		}
+		return true;
+	}
+
+	public static boolean sameValues(TimeUnit[] a, TimeUnit[] b) {
+		if (a.length != b.length) return false;
+		for (int i = 0; i < a.length; i++) {
+			if (a[i].totalNsecs() != b[i].totalNsecs()) return false;
+		}
+		return true;
+	}
+
+	/** Returns a hash code of the times in l, consistent with sameValues. */
+	public static int valuesHashCode(List<? extends TimeUnit> l) {
+		int h = 1;
+		for (TimeUnit t : l) h = 31 * h + hashNsecs(t.totalNsecs());
+		return h;
+	}
+
+	public static int valuesHashCode(TimeUnit[] a) {
+		int h = 1;
+		for (TimeUnit t : a) h = 31 * h + hashNsecs(t.totalNsecs());
+		return h;
+	}
+
+	/** Returns a hash code of the given number of nanoseconds. */
+	public static int hashNsecs(long nanos) {
+		return (int) (nanos ^ (nanos >>> 32));
+	}
+
 	public boolean isZero()     { return totalNsecs() == 0; }
 	public boolean isPositive() { return totalNsecs() >  0; }
 	public boolean isNegative() { return totalNsecs() <  0; }
 
 	public void normalize() {
-		while(nsecs < 0) {
-			nsecs += 1000000000;
-			secs -= 1;
-		}
-		while(nsecs >= 1000000000) {
-			nsecs -= 1000000000;
-			secs += 1;			
+		if (nsecs >= 0 && nsecs < NSECS_PER_SEC) return;
+		int carry = nsecs / (int) NSECS_PER_SEC;
+		nsecs -= carry * (int) NSECS_PER_SEC;
+		if (nsecs < 0) {
+			nsecs += NSECS_PER_SEC;
+			carry--;
 		}
+		secs += carry;
 	}
 	
 	public TimeUnit clone() {
@@ -0,0 +1,68 @@
+/*
+ * Software License Agreement (BSD License)
+ *
+ *  Copyright (c) 2008, Willow Garage, Inc.
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following
+ *     disclaimer in the documentation and/or other materials provided
+ *     with the distribution.
+ *   * Neither the name of Willow Garage, Inc. nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ *  FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ *  COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ *  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ *  BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ *  CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ *  ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package ros.roscpp;
+
+import ros.AsyncSpinner;
+
+public class CppAsyncSpinner implements AsyncSpinner {
+	private long cppSpinner;
+
+	private CppAsyncSpinner() {}
+
+	protected static CppAsyncSpinner create(int threadCount) {
+		if (threadCount < 0) throw new IllegalArgumentException("Negative thread count " + threadCount);
+		CppAsyncSpinner that = new CppAsyncSpinner();
+		that.cppSpinner = JNI.createAsyncSpinner(threadCount);
+		if (that.cppSpinner == 0) throw new RuntimeException("Could not create spinner.");
+		return that;
+	}
+
+	protected void finalize() { shutdown(); }
+
+	public synchronized void start() {
+		if (cppSpinner == 0) throw new RuntimeException("This spinner was already shutdown");
+		JNI.startAsyncSpinner(cppSpinner);
+	}
+
+	public synchronized void stop() {
+		if (cppSpinner != 0) JNI.stopAsyncSpinner(cppSpinner);
+	}
+
+	public synchronized void shutdown() {
+		if (cppSpinner == 0) return;
+		JNI.deleteAsyncSpinner(cppSpinner);
+		cppSpinner = 0;
+	}
+}
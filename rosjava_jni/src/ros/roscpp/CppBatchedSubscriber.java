@@ -0,0 +1,171 @@
+/*
+ * Software License Agreement (BSD License)
+ *
+ *  Copyright (c) 2008, Willow Garage, Inc.
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following
+ *     disclaimer in the documentation and/or other materials provided
+ *     with the distribution.
+ *   * Neither the name of Willow Garage, Inc. nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ *  FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ *  COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ *  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ *  BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ *  CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ *  ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package ros.roscpp;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import ros.BatchOptions;
+import ros.RosException;
+import ros.Subscriber;
+import ros.communication.FieldMask;
+import ros.communication.Message;
+import ros.communication.MessagePool;
+
+/**
+ * Subscription whose messages are copied into a native ring buffer by the spinner, without calling
+ * into Java, and decoded and dispatched in batches on a thread of the subscription (see BatchOptions).
+ *
+ * The ring holds records of a native-endian length followed by the message, padded to 4 bytes. A
+ * negative length marks the end of the ring, where the next record starts again at the beginning.
+ */
+public class CppBatchedSubscriber<M extends Message> implements Subscriber<M> {
+	private String topic;
+	private M messageTemplate;
+	private Callback<M> callback;
+	private MessagePool<M> pool;
+	private FieldMask mask;
+	private ByteBuffer ring;
+	private ByteBuffer view;
+	private long   cppQueue;
+	private long   dropped; // final drop count, once the native queue is freed
+	private volatile long cppSubscriber;
+
+	private CppBatchedSubscriber() {}
+
+	protected static <M extends Message> CppBatchedSubscriber<M> create(long cppHandle, String topic, M messageTemplate, Callback<M> callback, int queueSize, MessagePool<M> pool, FieldMask mask, BatchOptions options) throws RosException {
+		final CppBatchedSubscriber<M> that = new CppBatchedSubscriber<M>();
+		that.topic = topic;
+		that.messageTemplate = messageTemplate;
+		that.callback = callback;
+		that.pool = pool;
+		that.mask = mask;
+		that.ring = ByteBuffer.allocateDirect(options.bufferSize).order(ByteOrder.nativeOrder());
+		that.view = that.ring.duplicate();
+		that.cppQueue = JNI.createBatchQueue(that.ring, options.maxMessages, options.maxLatencyNanos / 1000);
+		if (that.cppQueue == 0) throw new RuntimeException("Could not create batch queue.");
+		that.cppSubscriber = JNI.subscribeBatched(cppHandle, topic, messageTemplate.getDataType(), messageTemplate.getMD5Sum(), that.cppQueue, queueSize);
+		if (that.cppSubscriber == 0) {
+			JNI.deleteBatchQueue(that.cppQueue);
+			throw new RosException("Could not subscribe to topic " + topic);
+		}
+		Thread drainer = new Thread("rosjava batches of " + topic) {
+			public void run() { that.drain(); }
+		};
+		drainer.setDaemon(true);
+		drainer.start();
+		return that;
+	}
+
+	// Dispatches batches until the subscription is shut down, and then frees the native queue
+	private void drain() {
+		long queue = cppQueue;
+		long readPos = 0;
+		try {
+			while (true) {
+				long writePos = JNI.awaitBatch(queue, readPos);
+				if (writePos < 0) break;
+				dispatch(readPos, writePos);
+				readPos = writePos;
+			}
+		} finally {
+			synchronized (this) {
+				dropped = JNI.getBatchDropCount(queue);
+				cppQueue = 0;
+				JNI.deleteBatchQueue(queue);
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void dispatch(long pos, long end) {
+		int capacity = ring.capacity();
+		while (pos < end && cppSubscriber != 0) {
+			int index = (int) (pos % capacity);
+			int len = ring.getInt(index);
+			if (len < 0) {
+				pos += capacity - index;
+				continue;
+			}
+			view.clear();
+			view.position(index + 4);
+			view.limit(index + 4 + len);
+			pos += 4 + ((len + 3) & ~3);
+			M m = pool != null ? pool.acquire() : (M) messageTemplate.clone();
+			boolean decoded = false;
+			try {
+				m.deserialize(view.slice().order(ByteOrder.LITTLE_ENDIAN), mask);
+				decoded = true;
+				callback.call(m);
+			} catch (RuntimeException e) {
+				// keep draining: the remaining messages of the batch are still owed to the callback, and
+				// the drainer must outlive the subscription
+				JNI.logError((decoded ? "Exception in callback" : "Could not decode message") + " for topic " + topic
+				             + ": " + stackTrace(e));
+				m.release(); // the callback failed, so it is not holding on to the message
+			}
+		}
+	}
+
+	private static String stackTrace(Throwable t) {
+		StringWriter w = new StringWriter();
+		t.printStackTrace(new PrintWriter(w));
+		return w.toString();
+	}
+
+	public String getTopic() { return topic; }
+
+	/**
+	 * Number of messages dropped so far because they did not fit in the ring buffer, either because the
+	 * callback falls behind or because they are larger than the buffer (which is also logged once).
+	 */
+	public synchronized long getDroppedMessages() {
+		return cppQueue != 0 ? JNI.getBatchDropCount(cppQueue) : dropped;
+	}
+
+	public boolean isValid() {
+		long sub = cppSubscriber;
+		return (sub != 0) && JNI.isSubscriberValid(sub);
+	}
+
+	public synchronized void shutdown() {
+		if (cppSubscriber == 0) return;
+		JNI.shutdownSubscriber(cppSubscriber);
+		cppSubscriber = 0;
+		if (cppQueue != 0) JNI.stopBatchQueue(cppQueue); // wakes up the drainer, which frees the queue
+	}
+}
@@ -47,15 +47,21 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.FutureTask;
 
+import ros.AsyncSpinner;
+import ros.BatchOptions;
 import ros.NodeHandle;
 import ros.Publisher;
+import ros.RawPublisher;
+import ros.RawSubscriber;
 import ros.RosException;
 import ros.ServiceClient;
 import ros.ServiceServer;
 import ros.Subscriber;
 import ros.Topic;
 import ros.ServiceServer.Callback;
+import ros.communication.FieldMask;
 import ros.communication.Message;
+import ros.communication.MessagePool;
 import ros.communication.Service;
 // TODO: see why we get messages out of order?
 import ros.communication.Time;
@@ -68,6 +74,9 @@ public class CppNodeHandle extends NodeHandle {
 	private Map<String, String> remappingArgs;
 	private List<CppPublisher<Message> > publishers;
 	private List<CppSubscriber<Message> > subscribers;
+	private List<CppRawPublisher> rawPublishers;
+	private List<CppRawSubscriber> rawSubscribers;
+	private List<CppBatchedSubscriber<Message> > batchedSubscribers;
 	private List<CppServiceServer<Message,Message,Service<Message, Message> > > serviceServers;
 	private List<CppServiceClient<Message,Message,Service<Message, Message> > > serviceClients;
 
@@ -89,6 +98,9 @@ public class CppNodeHandle extends NodeHandle {
 		remappingArgs = remappings;
 		publishers = new LinkedList<CppPublisher<Message> > ();
 		subscribers = new LinkedList<CppSubscriber<Message> > ();
+		rawPublishers = new LinkedList<CppRawPublisher>();
+		rawSubscribers = new LinkedList<CppRawSubscriber>();
+		batchedSubscribers = new LinkedList<CppBatchedSubscriber<Message> >();
 		serviceServers = new LinkedList<CppServiceServer<Message,Message,Service<Message, Message> > >();
 		serviceClients = new LinkedList<CppServiceClient<Message,Message,Service<Message, Message> > >();
 		cppHandle = JNI.createNodeHandle(ns, Util.mapToArray(remappings));
@@ -105,6 +117,9 @@ public class CppNodeHandle extends NodeHandle {
 		if (!isValid()) throw new RuntimeException("Node has already been shutdown");
 		for (CppPublisher<Message> pub : publishers) pub.shutdown();
 		for (CppSubscriber<Message> sub : subscribers) sub.shutdown();
+		for (CppRawPublisher pub : rawPublishers) pub.shutdown();
+		for (CppRawSubscriber sub : rawSubscribers) sub.shutdown();
+		for (CppBatchedSubscriber<Message> sub : batchedSubscribers) sub.shutdown();
 		for (CppServiceServer<Message,Message,Service<Message, Message> > ss : serviceServers) ss.shutdown();
 		for (CppServiceClient<Message,Message,Service<Message, Message> > sc : serviceClients) sc.shutdown();
 		JNI.shutdown(cppHandle);
@@ -186,10 +201,30 @@ public class CppNodeHandle extends NodeHandle {
 	 *   Publications and Subscriptions
 	 ************************************************************/
 
-	@SuppressWarnings("unchecked")
 	public <M extends Message> Subscriber<M> subscribe(String topic, M messageTemplate, 
                                                  		ros.Subscriber.Callback<M> callback, int queueSize) throws RosException {
-		Subscriber<M> ret = CppSubscriber.create(cppHandle, topic, messageTemplate, callback,queueSize);
+		return subscribe(topic, messageTemplate, callback, queueSize, null, null);
+	}
+
+	public <M extends Message> Subscriber<M> subscribe(String topic, M messageTemplate, 
+                                                 		ros.Subscriber.Callback<M> callback, int queueSize, MessagePool<M> pool) throws RosException {
+		return subscribe(topic, messageTemplate, callback, queueSize, pool, null);
+	}
+
+	public <M extends Message> Subscriber<M> subscribe(String topic, M messageTemplate, 
+                                                 		ros.Subscriber.Callback<M> callback, int queueSize, MessagePool<M> pool, FieldMask mask) throws RosException {
+		return subscribe(topic, messageTemplate, callback, queueSize, pool, mask, null);
+	}
+
+	@SuppressWarnings("unchecked")
+	public <M extends Message> Subscriber<M> subscribe(String topic, M messageTemplate, 
+                                                 		ros.Subscriber.Callback<M> callback, int queueSize, MessagePool<M> pool, FieldMask mask, BatchOptions batching) throws RosException {
+		if (batching != null) {
+			Subscriber<M> ret = CppBatchedSubscriber.create(cppHandle, topic, messageTemplate, callback, queueSize, pool, mask, batching);
+			batchedSubscribers.add((CppBatchedSubscriber<Message>) ret);
+			return ret;
+		}
+		Subscriber<M> ret = CppSubscriber.create(cppHandle, topic, messageTemplate, callback,queueSize, pool, mask);
 		subscribers.add((CppSubscriber<Message>) ret);
 		return ret;
 	}
@@ -201,6 +236,18 @@ public class CppNodeHandle extends NodeHandle {
 		return ret;
 	}
 
+	public RawSubscriber subscribeRaw(String topic, String dataType, String md5sum, RawSubscriber.Callback callback, int queueSize) throws RosException {
+		CppRawSubscriber ret = CppRawSubscriber.create(cppHandle, topic, dataType, md5sum, callback, queueSize);
+		rawSubscribers.add(ret);
+		return ret;
+	}
+
+	public RawPublisher advertiseRaw(String newTopic, String dataType, String md5sum, String definition, int queueSize, boolean latch) throws RosException {
+		CppRawPublisher ret = CppRawPublisher.create(cppHandle, newTopic, dataType, md5sum, definition, queueSize, latch);
+		rawPublishers.add(ret);
+		return ret;
+	}
+
 
 	/************************************************************
 	 *   Service Clients and Servers
@@ -233,6 +280,8 @@ public class CppNodeHandle extends NodeHandle {
 
 	public void spin()                     { ros.spin(); }
 	public void spinOnce()                 { ros.spinOnce(); }
+	public void spin(int threadCount)      { ros.spin(threadCount); }
+	public AsyncSpinner createAsyncSpinner(int threadCount) { return ros.createAsyncSpinner(threadCount); }
 
 	public void logDebug(String message)   { ros.logDebug(message); }
 	public void logInfo(String message)    { ros.logInfo(message); }
@@ -37,6 +37,8 @@
 
 package ros.roscpp;
 
+import java.nio.ByteBuffer;
+
 import ros.Publisher;
 import ros.RosException;
 import ros.communication.Message;
@@ -45,6 +47,9 @@ public class CppPublisher<M extends Message> implements Publisher<M> {
 	private String topic;
 	private M msgTemplate;
 	private long cppPublisher;
+
+	// Whether messages can be serialized in Java and handed over as bytes, in one JNI call per publish
+	private static final boolean serializeInJava = JNI.supportsRawMessages();
 	
 	private CppPublisher() {}
 	
@@ -66,7 +71,12 @@ public class CppPublisher<M extends Message> implements Publisher<M> {
 	public void publish(M m) {
 		if (cppPublisher == 0) throw new RuntimeException("This publication was already shutdown");
 		if (m.getClass() != msgTemplate.getClass()) throw new RuntimeException("This message does not match the advertised type.");
-		JNI.publish(cppPublisher, m);
+		if (serializeInJava) {
+			ByteBuffer bb = m.serializeInto(0);
+			JNI.publishRaw(cppPublisher, bb, 0, bb.limit());
+		} else {
+			JNI.publish(cppPublisher, m);
+		}
 	}
 
 	public boolean isValid() { return (cppPublisher != 0) && JNI.isPublisherValid(cppPublisher);} 
@@ -0,0 +1,82 @@
+/*
+ * Software License Agreement (BSD License)
+ *
+ *  Copyright (c) 2008, Willow Garage, Inc.
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following
+ *     disclaimer in the documentation and/or other materials provided
+ *     with the distribution.
+ *   * Neither the name of Willow Garage, Inc. nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ *  FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ *  COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ *  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ *  BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ *  CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ *  ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package ros.roscpp;
+
+import java.nio.ByteBuffer;
+
+import ros.RawPublisher;
+import ros.RosException;
+
+public class CppRawPublisher implements RawPublisher {
+	private String topic;
+	private long cppPublisher;
+	
+	private CppRawPublisher() {}
+	
+	protected static CppRawPublisher create(long cppHandle, String topic, String dataType, String md5sum, String definition, int queueSize, boolean latch) throws RosException {
+		CppRawPublisher that = new CppRawPublisher();
+		that.topic = topic;
+		that.cppPublisher = JNI.advertiseRaw(cppHandle, topic, dataType, md5sum, definition, queueSize, latch);
+		if (that.cppPublisher == 0) throw new RosException("Could not advertise topic " + topic);
+		return that;
+	}
+	
+	public String getTopic() { return topic; }
+
+	public int getNumSubscribers() {
+		return JNI.getNumSubscribers(cppPublisher);
+	}
+
+	public void publish(ByteBuffer message) {
+		if (cppPublisher == 0) throw new RuntimeException("This publication was already shutdown");
+		if (message.isDirect()) {
+			JNI.publishRaw(cppPublisher, message, message.position(), message.remaining());
+		} else if (message.hasArray()) {
+			JNI.publishRawArray(cppPublisher, message.array(), message.arrayOffset() + message.position(), message.remaining());
+		} else {
+			// read-only heap buffer: its array is not accessible
+			byte [] copy = new byte[message.remaining()];
+			message.duplicate().get(copy);
+			JNI.publishRawArray(cppPublisher, copy, 0, copy.length);
+		}
+	}
+
+	public boolean isValid() { return (cppPublisher != 0) && JNI.isPublisherValid(cppPublisher);} 
+
+	public void shutdown() {
+		JNI.shutdownPublisher(cppPublisher);
+		cppPublisher = 0;
+	}
+}
@@ -0,0 +1,90 @@
+/*
+ * Software License Agreement (BSD License)
+ *
+ *  Copyright (c) 2008, Willow Garage, Inc.
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above
+ *     copyright notice, this list of conditions and the following
+ *     disclaimer in the documentation and/or other materials provided
+ *     with the distribution.
+ *   * Neither the name of Willow Garage, Inc. nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ *  FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ *  COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ *  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ *  BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ *  CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ *  ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package ros.roscpp;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Collections;
+import java.util.Map;
+
+import ros.RawSubscriber;
+import ros.RosException;
+
+public class CppRawSubscriber implements RawSubscriber {
+	private String topic;
+	private Callback callback;
+	private long   cppSubscriber;
+	private volatile Header lastHeader;
+
+	// Connection header as passed in from native code, which reuses the array while the connection stays the same
+	private static final class Header {
+		final String [] fields;
+		final Map<String, String> map;
+
+		Header(String [] fields) {
+			this.fields = fields;
+			this.map = Collections.unmodifiableMap(Util.arrayToMap(fields));
+		}
+	}
+
+	private CppRawSubscriber() {}
+
+	protected static CppRawSubscriber create(long cppHandle, String topic, String dataType, String md5sum, Callback callback, int queueSize) throws RosException {
+		CppRawSubscriber that = new CppRawSubscriber();
+		that.topic = topic;
+		that.callback = callback;
+		that.cppSubscriber = JNI.subscribeRaw(cppHandle, topic, dataType, md5sum, that, queueSize);
+		if (that.cppSubscriber == 0) throw new RosException("Could not subscribe to topic " + topic);
+		return that;
+	}
+
+	// Called from native code with a direct buffer over the received bytes, and the header as key/value pairs
+	void deliver(ByteBuffer message, String [] header) {
+		Header h = lastHeader;
+		if (h == null || h.fields != header) lastHeader = h = new Header(header);
+		callback.call(message.asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN), h.map);
+	}
+
+	public String getTopic() { return topic; }
+
+	public boolean isValid() { return (cppSubscriber != 0) && JNI.isSubscriberValid(cppSubscriber); } 
+
+	public void shutdown() {
+		if (!isValid()) return;
+		JNI.shutdownSubscriber(cppSubscriber);
+
+		cppSubscriber = 0;
+	}
+}
@@ -37,21 +37,42 @@
 
 package ros.roscpp;
 
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+import ros.RawSubscriber;
 import ros.RosException;
 import ros.Subscriber;
+import ros.communication.FieldMask;
 import ros.communication.Message;
+import ros.communication.MessagePool;
 
 public class CppSubscriber<M extends Message> implements Subscriber<M> {
 	private String topic;
 	private long   cppCallback;
 	private long   cppSubscriber;
+	private CppRawSubscriber raw;
+
+	// Whether pooled messages can be decoded in Java from the received bytes, so that no references to them are created natively
+	private static final boolean decodeInJava = JNI.supportsRawMessages();
+	// Whether it has been logged that pools are ignored because decodeInJava is false
+	private static volatile boolean warnedPoolIgnored;
 
 	private CppSubscriber() {}
 	
-	protected static <M extends Message> CppSubscriber<M> create(long cppHandle, String topic, M messageTemplate, Callback<M> callback, int queueSize) throws RosException {
+	protected static <M extends Message> CppSubscriber<M> create(long cppHandle, String topic, M messageTemplate, Callback<M> callback, int queueSize, MessagePool<M> pool, FieldMask mask) throws RosException {
 		CppSubscriber<M> that = new CppSubscriber<M>();
 		that.topic = topic;
-		that.cppCallback = JNI.createSubCallback(callback, messageTemplate);
+		if (pool != null && decodeInJava) {
+			that.raw = CppRawSubscriber.create(cppHandle, topic, messageTemplate.getDataType(), messageTemplate.getMD5Sum(), new PoolDecoder<M>(pool, mask, callback), queueSize);
+			return that;
+		}
+		if (pool != null && !warnedPoolIgnored) {
+			warnedPoolIgnored = true;
+			JNI.logWarn("Message pools need the roscpp serialization API, which is not available; subscribing to "
+					+ topic + " without pool");
+		}
+		that.cppCallback = JNI.createSubCallback(callback, messageTemplate, mask);
 		if (that.cppCallback == 0) throw new RuntimeException("Could not create callback wrapper.");
 		that.cppSubscriber = JNI.subscribe(cppHandle, topic, that.cppCallback, queueSize);
 		if (that.cppSubscriber == 0) {
@@ -60,12 +81,38 @@ public class CppSubscriber<M extends Message> implements Subscriber<M> {
 		}
 		return that;
 	}
+
+	// Decodes the received bytes into a message from the pool, and passes it on to the callback
+	private static class PoolDecoder<M extends Message> implements RawSubscriber.Callback {
+		private final MessagePool<M> pool;
+		private final FieldMask mask;
+		private final Callback<M> callback;
+
+		PoolDecoder(MessagePool<M> pool, FieldMask mask, Callback<M> callback) {
+			this.pool = pool;
+			this.mask = mask;
+			this.callback = callback;
+		}
+
+		public void call(ByteBuffer message, Map<String, String> connectionHeader) {
+			M m = pool.acquire();
+			m.deserialize(message, mask);
+			callback.call(m);
+		}
+	}
 	
 	public String getTopic() { return topic; }
 
-	public boolean isValid() { return (cppSubscriber != 0) && JNI.isSubscriberValid(cppSubscriber); } 
+	public boolean isValid() {
+		if (raw != null) return raw.isValid();
+		return (cppSubscriber != 0) && JNI.isSubscriberValid(cppSubscriber);
+	} 
 
 	public void shutdown() {
+		if (raw != null) {
+			raw.shutdown();
+			return;
+		}
 		if (!isValid()) return;
 		JNI.shutdownSubscriber(cppSubscriber);
 		JNI.deleteSubCallback(cppCallback);
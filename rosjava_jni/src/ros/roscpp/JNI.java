@@ -37,8 +37,11 @@
 
 package ros.roscpp;
 
+import java.nio.ByteBuffer;
+
 import ros.ServiceServer;
 import ros.Subscriber;
+import ros.communication.FieldMask;
 import ros.communication.Message;
 import ros.communication.Time;
 
@@ -61,6 +64,12 @@ class JNI {
 	
 	public static native void spin();
 	public static native void spinOnce();
+	public static native void spinMultiThreaded(int threadCount);
+
+	public static native long createAsyncSpinner(int threadCount);
+	public static native void startAsyncSpinner(long cppSpinner);
+	public static native void stopAsyncSpinner(long cppSpinner);
+	public static native void deleteAsyncSpinner(long cppSpinner);
 
 	public static native boolean checkMaster(long cppHandle);
 	public static native String getMasterHost(long cppHandle);
@@ -89,6 +98,7 @@ class JNI {
 	 ************************************************************/
 
 	public static native Time now();
+	public static native long nowNsecs();
 
 	public static native String [] getSubscribedTopics(long cppHandle);
 	public static native String [] getAdvertisedTopics(long cppHandle);
@@ -114,16 +124,27 @@ class JNI {
 	 *   Subscriptions and Publications
 	 ************************************************************/
 
-	@SuppressWarnings("unchecked")
-	public static native long createSubCallback(Subscriber.Callback cb, Message template);
+	public static native long createSubCallback(Subscriber.Callback<?> cb, Message template, FieldMask mask);
 	public static native void deleteSubCallback(long cppCallback);
 	public static native long subscribe(long cppHandle, String topic, long cppCallback, int queueSize);
 	public static native boolean isSubscriberValid(long cppSubscriber);
 	public static native void shutdownSubscriber(long cppSubscriber);
+	public static native long subscribeRaw(long cppHandle, String topic, String dataType, String md5sum, CppRawSubscriber subscriber, int queueSize);
+
+	public static native long createBatchQueue(ByteBuffer ring, int maxMessages, long maxLatencyMicros);
+	public static native void deleteBatchQueue(long cppQueue);
+	public static native long subscribeBatched(long cppHandle, String topic, String dataType, String md5sum, long cppQueue, int queueSize);
+	public static native long awaitBatch(long cppQueue, long consumed);
+	public static native void stopBatchQueue(long cppQueue);
+	public static native long getBatchDropCount(long cppQueue);
 
 	public static native long advertise(long cppHandle, String topic, Message msgTemplate, int queueSize, boolean latch);
 	public static native int getNumSubscribers(long cppPublisher);
 	public static native void publish(long cppPublisher, Message m);
+	public static native boolean supportsRawMessages();
+	public static native long advertiseRaw(long cppHandle, String topic, String dataType, String md5sum, String definition, int queueSize, boolean latch);
+	public static native void publishRaw(long cppPublisher, ByteBuffer directBuffer, int offset, int length);
+	public static native void publishRawArray(long cppPublisher, byte [] data, int offset, int length);
 	public static native boolean isPublisherValid(long cppPublisher);
 	public static native void shutdownPublisher(long cppPublisher);
 
@@ -135,8 +156,7 @@ class JNI {
 	public static native boolean callService(long cppServiceClient, Message request, Message response, String md5);
 	public static native void shutdownServiceClient(long cppServiceClient);
 
-	@SuppressWarnings("unchecked")
-	public static native long createSrvCallback(ServiceServer.Callback cb, String serviceMD5, String serviceDataType, Message reqTemplate, Message resTemplate);
+	public static native long createSrvCallback(ServiceServer.Callback<?, ?> cb, String serviceMD5, String serviceDataType, Message reqTemplate, Message resTemplate);
 	public static native void deleteSrvCallback(long cppCallback);
 	public static native long advertiseService(long cppHandle, String name, long cppCallback);
 	public static native boolean isServiceServerValid(long cppServiceServer);
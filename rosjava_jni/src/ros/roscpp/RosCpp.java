@@ -40,6 +40,7 @@ package ros.roscpp;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
 
+import ros.AsyncSpinner;
 import ros.NodeHandle;
 import ros.Publisher;
 import ros.Ros;
@@ -87,11 +88,23 @@ public class RosCpp extends Ros {
 	@Override
 	public Time now() { return JNI.now(); }
 
+	@Override
+	public long nowNsecs() { return JNI.nowNsecs(); }
+
 	@Override
 	public void spin() { JNI.spin(); }
 
 	@Override
 	public void spinOnce() { JNI.spinOnce(); }
+
+	@Override
+	public void spin(int threadCount) {
+		if (threadCount < 0) throw new IllegalArgumentException("Negative thread count " + threadCount);
+		JNI.spinMultiThreaded(threadCount);
+	}
+
+	@Override
+	public AsyncSpinner createAsyncSpinner(int threadCount) { return CppAsyncSpinner.create(threadCount); }
 	
 	@Override
 	public String getPackageLocation(String pkgName) {return JNI.getPackageLocation(pkgName);} 
@@ -0,0 +1,86 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import ros.communication.*;
+import ros.pkg.test_rosjava_jni.msg.TestFieldMask;
+import ros.pkg.std_msgs.msg.ByteMultiArray;
+import ros.pkg.std_msgs.msg.MultiArrayDimension;
+
+/** Decodes messages with various FieldMasks; does not need a ROS master. */
+public class FieldMaskTest {
+    // sequence number the messages are serialized with, which ends up in their headers
+    private static final int SEQ = 7;
+    
+    public static void main(String args[]) {
+        TestFieldMask msg = new TestFieldMask();
+        msg.header.stamp = new Time(3, 4);
+        msg.header.frame_id = "base";
+        for (int i = 0; i < 2; i++) {
+            ByteMultiArray array = new ByteMultiArray();
+            MultiArrayDimension dim = new MultiArrayDimension();
+            dim.label = "x";
+            dim.size = i + 1;
+            dim.stride = i + 1;
+            array.layout.dim.add(dim);
+            array.layout.data_offset = i + 5;
+            msg.arrays.add(array);
+        }
+        msg.name = "test";
+        
+        // a whole submessage and one of its fields select the whole submessage, in either order
+        checkHeaderOnly(msg, decode(msg, new FieldMask("header", "header.stamp")));
+        checkHeaderOnly(msg, decode(msg, new FieldMask("header.stamp", "header")));
+        
+        TestFieldMask stamp = decode(msg, new FieldMask("header.stamp"));
+        check(stamp.header.stamp.sameAs(msg.header.stamp), "stamp not decoded");
+        check(stamp.header.seq == 0 && stamp.header.frame_id.equals(""), "fields beside the stamp decoded");
+        
+        // the list of variable-length submessages is skipped, and name after it is still found
+        TestFieldMask name = decode(msg, new FieldMask("name"));
+        check(name.name.equals("test"), "name not decoded after skipped list");
+        check(name.arrays.isEmpty() && name.header.seq == 0, "unselected fields decoded");
+        
+        // a field of a submessage of the list elements
+        TestFieldMask offset = decode(msg, new FieldMask("arrays.layout.data_offset"));
+        check(offset.arrays.size() == 2, "list not decoded");
+        check(offset.arrays.get(1).layout.data_offset == 6, "element field not decoded");
+        check(offset.arrays.get(1).layout.dim.isEmpty() && offset.name.equals(""), "unselected fields decoded");
+        
+        checkUnknown(msg, new FieldMask("nope"));
+        checkUnknown(msg, new FieldMask("header.nope"));
+        
+        System.out.println("FieldMask tests passed");
+    }
+    
+    // Decodes msg into a new message with the given mask, checking that the whole buffer is consumed
+    private static TestFieldMask decode(TestFieldMask msg, FieldMask mask) {
+        ByteBuffer bb = ByteBuffer.wrap(msg.serialize(SEQ)).order(ByteOrder.LITTLE_ENDIAN);
+        TestFieldMask result = new TestFieldMask();
+        result.deserialize(bb, mask);
+        check(bb.remaining() == 0, "buffer not consumed with mask " + mask);
+        return result;
+    }
+    
+    private static void checkHeaderOnly(TestFieldMask msg, TestFieldMask decoded) {
+        check(decoded.header.seq == SEQ, "seq not decoded");
+        check(decoded.header.stamp.sameAs(msg.header.stamp), "stamp not decoded");
+        check(decoded.header.frame_id.equals(msg.header.frame_id), "frame_id not decoded");
+        check(decoded.arrays.isEmpty() && decoded.name.equals(""), "fields beside the header decoded");
+    }
+    
+    private static void checkUnknown(TestFieldMask msg, FieldMask mask) {
+        try {
+            decode(msg, mask);
+        } catch (IllegalArgumentException e) {
+            return;
+        }
+        check(false, "no error for unknown field in " + mask);
+    }
+    
+    private static void check(boolean condition, String failure) {
+        if (!condition) {
+            System.err.println("FAILED: " + failure);
+            System.exit(1);
+        }
+    }
+}
@@ -30,12 +30,16 @@
 
 package tfjava;
 
-import java.util.HashMap;
+import java.util.Collection;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Transformation frame, containing references to all parent frames and corresponding time caches.
  * 
+ * Data is only inserted by one thread at a time (under the lock of the shard containing this frame),
+ * but may be read concurrently by any number of threads.
+ * 
  * @author Sjoerd van den Dries
  * @version Feb 28, 2011
  */
@@ -44,17 +48,22 @@ public class Frame {
     /** ID of this frame. */
     private String frameID;
     /** Map containing parent frames of this frame with corresponding time caches.*/
-    private HashMap<Frame, TimeCache> parentMap;
+    private ConcurrentHashMap<Frame, TimeCache> parentMap;
+    /** Time caches of parentMap, for iteration without allocation (copy-on-write) */
+    private volatile TimeCache[] parentCaches = new TimeCache[0];
     /** Maximum storage time of time caches in nanoseconds.*/    
     private long maxStorageTime;
+    /** Metrics of the buffer this frame belongs to */
+    private TFMetrics metrics;
     
     /**
      * Class constructor.
      */
-    public Frame(String frameID, long maxStorageTime) {
+    public Frame(String frameID, long maxStorageTime, TFMetrics metrics) {
         this.frameID = frameID;
         this.maxStorageTime = maxStorageTime;
-        parentMap = new HashMap<Frame, TimeCache>();
+        this.metrics = metrics;
+        parentMap = new ConcurrentHashMap<Frame, TimeCache>();
     }
     
     /**
@@ -72,8 +81,15 @@ public class Frame {
         TimeCache cache = parentMap.get(parentFrame);
         
         if (cache == null) {
-            cache = new TimeCache(maxStorageTime, parentFrame, childFrame);
+            // only publish the new cache once it contains data, so readers never see an empty cache
+            cache = new TimeCache(maxStorageTime, parentFrame, childFrame, metrics);
+            boolean inserted = cache.insertData(newData);
             parentMap.put(parentFrame, cache);
+            TimeCache[] caches = new TimeCache[parentCaches.length + 1];
+            System.arraycopy(parentCaches, 0, caches, 0, parentCaches.length);
+            caches[parentCaches.length] = cache;
+            parentCaches = caches;
+            return inserted;
         }
         
         return cache.insertData(newData);
@@ -87,13 +103,21 @@ public class Frame {
      * to return a transformation of the given point in time.
      */
     public TransformStorage getData(long time, Frame sourceFrame) {
+        return getData(time, sourceFrame, null);
+    }
+    
+    /**
+     * Like getData(time, sourceFrame), but an interpolated transformation is stored in out (unless it is
+     * null) instead of a new object, see {@link TimeCache#getData(long, TransformStorage)}.
+     */
+    public TransformStorage getData(long time, Frame sourceFrame, TransformStorage out) {
         TimeCache cache = parentMap.get(sourceFrame);
         
         if (cache == null) {
             // parent frame not found. TODO: throw error
             return null;
         }
-        return cache.getData(time);
+        return cache.getData(time, out);
     }
     
     /**
@@ -110,6 +134,21 @@ public class Frame {
         return parentMap.get(sourceFrame);
     }
     
+    /**
+     * Returns the time caches containing the transformations from all parent frames to this frame.
+     */
+    public Collection<TimeCache> getTimeCaches() {
+        return parentMap.values();
+    }
+    
+    /**
+     * Returns the time caches containing the transformations from all parent frames to this frame, as an
+     * array that must not be modified.
+     */
+    public TimeCache[] getParentCaches() {
+        return parentCaches;
+    }
+    
     /**
      * Returns a set containing references to all parent frames of this frame.
      */
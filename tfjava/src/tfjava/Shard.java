@@ -0,0 +1,101 @@
+/* 
+ * Copyright (c) 2011, Sjoerd van den Dries
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Technische Universiteit Eindhoven nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package tfjava;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Partition of the tf buffer, containing all frames of one namespace (e.g., all frames of one robot
+ * with the same tf_prefix).
+ * 
+ * Each shard has its own frame registry and its own ingestion lock (the shard itself), so transforms
+ * for frames in different shards can be inserted concurrently. Lookups do not lock at all. Since child
+ * frames refer to their parent frames, but not the other way around, a complete shard can be removed
+ * from the buffer by simply dropping it.
+ */
+public class Shard {
+    
+    /** Namespace of the frames in this shard; "" for the global namespace */
+    private String namespace;
+    /** Map that maps frame ID's (names) to frames */
+    private ConcurrentHashMap<String, Frame> frames;
+    /** Maximum storage time of the time caches of the frames in this shard, in nanoseconds */
+    private long maxStorageTime;
+    /** Metrics of the buffer this shard belongs to */
+    private TFMetrics metrics;
+    
+    /**
+     * Class constructor.
+     */
+    public Shard(String namespace, long maxStorageTime, TFMetrics metrics) {
+        this.namespace = namespace;
+        this.maxStorageTime = maxStorageTime;
+        this.metrics = metrics;
+        this.frames = new ConcurrentHashMap<String, Frame>();
+    }
+    
+    /**
+     * Returns the frame belonging to the given frame ID, or null if it does not exist.
+     */
+    public Frame getFrame(String frameID) {
+        return frames.get(frameID);
+    }
+    
+    /**
+     * Looks up and returns the frame belonging to the given frame ID.
+     * If the frame does not exist yet, it is first added to the shard.
+     */
+    public Frame lookupOrInsertFrame(String frameID) {
+        Frame frame = frames.get(frameID);
+        if (frame == null) {
+            Frame newFrame = new Frame(frameID, maxStorageTime, metrics);
+            frame = frames.putIfAbsent(frameID, newFrame);
+            if (frame == null) frame = newFrame;
+        }
+        return frame;
+    }
+    
+    /**
+     * Returns all frames in this shard.
+     */
+    public Collection<Frame> getFrames() {
+        return frames.values();
+    }
+    
+    /**
+     * Returns the namespace of the frames in this shard.
+     */
+    public String getNamespace() {
+        return namespace;
+    }
+    
+}
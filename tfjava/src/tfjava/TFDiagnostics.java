@@ -0,0 +1,169 @@
+/* 
+ * Copyright (c) 2011, Sjoerd van den Dries
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Technische Universiteit Eindhoven nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package tfjava;
+
+import java.util.EnumMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Aggregates failed inserts and lookups of the tf buffer per status and frame pair.
+ * 
+ * Recording an occurrence only increments a counter; no strings are built. At most once per summary
+ * interval per status and frame pair, {@link #record} returns a summary message of the occurrences since
+ * the previous summary, which the caller can log. The first occurrence is always summarized immediately.
+ */
+public class TFDiagnostics {
+    
+    /** Default minimum time between two summaries of the same status and frame pair: 5 seconds */
+    public static final long DEFAULT_SUMMARY_INTERVAL = 5000000000L;
+    
+    /** Counters per status, frame ID and child frame ID */
+    private EnumMap<TFStatus, ConcurrentHashMap<String, ConcurrentHashMap<String, Counter>>> counters;
+    /** Minimum time between two summaries of the same status and frame pair, in nanoseconds */
+    private volatile long summaryInterval = DEFAULT_SUMMARY_INTERVAL;
+    
+    /**
+     * Class constructor.
+     */
+    public TFDiagnostics() {
+        counters = new EnumMap<TFStatus, ConcurrentHashMap<String, ConcurrentHashMap<String, Counter>>>(TFStatus.class);
+        for(TFStatus status : TFStatus.values()) {
+            counters.put(status, new ConcurrentHashMap<String, ConcurrentHashMap<String, Counter>>());
+        }
+    }
+    
+    /**
+     * Records an occurrence of the given status for the given frame pair. Returns a summary message if
+     * one is due for this status and frame pair, or null otherwise.
+     */
+    public String record(TFStatus status, String frameID, String childFrameID) {
+        Counter counter = lookupOrInsertCounter(status, frameID, childFrameID);
+        counter.total.incrementAndGet();
+        long pending = counter.pending.incrementAndGet();
+        
+        long now = System.nanoTime();
+        long last = counter.lastSummary.get();
+        if (last != 0 && now - last < summaryInterval) return null;
+        // only one thread gets to write the summary
+        if (!counter.lastSummary.compareAndSet(last, now)) return null;
+        counter.pending.addAndGet(-pending);
+        
+        StringBuilder sb = new StringBuilder(status.getDescription());
+        sb.append(" (frame_id \"").append(frameID).append("\", child_frame_id \"").append(childFrameID).append("\")");
+        if (last != 0) {
+            sb.append(": ").append(pending).append(" times in the last ");
+            sb.append((double)(now - last) / 1E9).append(" s");
+        }
+        sb.append(", ").append(counter.total.get()).append(" times in total");
+        return sb.toString();
+    }
+    
+    /**
+     * Returns how often the given status was recorded for the given frame pair.
+     */
+    public long getCount(TFStatus status, String frameID, String childFrameID) {
+        ConcurrentHashMap<String, Counter> children = counters.get(status).get(frameID);
+        if (children == null) return 0;
+        Counter counter = children.get(childFrameID);
+        if (counter == null) return 0;
+        return counter.total.get();
+    }
+    
+    /**
+     * Returns how often the given status was recorded, for all frame pairs together.
+     */
+    public long getCount(TFStatus status) {
+        long count = 0;
+        for(ConcurrentHashMap<String, Counter> children : counters.get(status).values()) {
+            for(Counter counter : children.values()) {
+                count += counter.total.get();
+            }
+        }
+        return count;
+    }
+    
+    /**
+     * Sets the minimum time between two summaries of the same status and frame pair, in nanoseconds.
+     */
+    public void setSummaryInterval(long summaryInterval) {
+        this.summaryInterval = summaryInterval;
+    }
+    
+    /**
+     * Returns the minimum time between two summaries of the same status and frame pair, in nanoseconds.
+     */
+    public long getSummaryInterval() {
+        return summaryInterval;
+    }
+    
+    /**
+     * Resets all counters.
+     */
+    public void clear() {
+        for(ConcurrentHashMap<String, ConcurrentHashMap<String, Counter>> map : counters.values()) {
+            map.clear();
+        }
+    }
+    
+    /**
+     * Looks up and returns the counter of the given status and frame pair.
+     * If the counter does not exist yet, it is first added.
+     */
+    private Counter lookupOrInsertCounter(TFStatus status, String frameID, String childFrameID) {
+        ConcurrentHashMap<String, ConcurrentHashMap<String, Counter>> map = counters.get(status);
+        ConcurrentHashMap<String, Counter> children = map.get(frameID);
+        if (children == null) {
+            ConcurrentHashMap<String, Counter> newChildren = new ConcurrentHashMap<String, Counter>();
+            children = map.putIfAbsent(frameID, newChildren);
+            if (children == null) children = newChildren;
+        }
+        Counter counter = children.get(childFrameID);
+        if (counter == null) {
+            Counter newCounter = new Counter();
+            counter = children.putIfAbsent(childFrameID, newCounter);
+            if (counter == null) counter = newCounter;
+        }
+        return counter;
+    }
+    
+    /**
+     * Occurrence counters of one status and frame pair.
+     */
+    private static class Counter {
+        /** Number of occurrences since creation */
+        final AtomicLong total = new AtomicLong();
+        /** Number of occurrences since the last summary */
+        final AtomicLong pending = new AtomicLong();
+        /** Time of the last summary (System.nanoTime), 0 if there was none */
+        final AtomicLong lastSummary = new AtomicLong();
+    }
+    
+}
@@ -36,14 +36,22 @@ import ros.communication.*;
 import ros.pkg.tf.msg.tfMessage;
 import ros.pkg.geometry_msgs.msg.TransformStamped;
 
+import javax.vecmath.AxisAngle4d;
+import javax.vecmath.Matrix3d;
 import javax.vecmath.Quat4d;
 import javax.vecmath.Vector3d;
 import javax.vecmath.Point3d;
 import javax.vecmath.Matrix4d;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.PriorityQueue;
-import java.util.LinkedList;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import java.lang.management.ManagementFactory;
+import javax.management.ObjectName;
 
 /**
  * A client that listens to the /tf topic, stores transforms in a buffer and allows transformation
@@ -54,6 +62,11 @@ import java.util.LinkedList;
  * lookup of transformations. Tf's that are MAX_STORAGE_TIME older than the newest tf in the corresponding
  * time cache are ignored.
  * 
+ * The buffer is partitioned into shards by namespace, i.e., the first component of the frame ID (the tf_prefix
+ * of a robot, such as "/robot1" for "/robot1/base_link"); frames without namespace, such as "/map", are in the
+ * global shard. Inserts into different shards never contend, lookups do not lock, and all frames of a
+ * namespace can be removed at once with {@link #removeNamespace}.
+ * 
  * To calculate a transformation from some source frame S to a target frame T at time t, TFListener uses a graph
  * search to find the best path from S to T. At the moment, 'best' means that the largest difference between
  * the time stamps of the transformations on the path and time t is minimized. If the tf graph is a tree, as is
@@ -76,17 +89,48 @@ public class TFListener {
     protected static NodeHandle rosNode;
     /** The singleton instance */
     protected static TFListener instance;    
-    /** Map that maps frame ID's (names) to frames */    
-    protected HashMap<String, Frame> frames;
-    /** TF name prefix, currently not used (TODO) */
+    /** Map that maps namespaces to the shards containing their frames */    
+    protected ConcurrentHashMap<String, Shard> shards;
+    /** Frame ID's registered for the bulk methods, indexed by frame index (copy-on-write) */
+    protected volatile String[] indexedFrameIDs = new String[0];
+    /** Map that maps registered frame ID's to their frame index (copy-on-write) */
+    protected volatile HashMap<String, Integer> frameIndices = new HashMap<String, Integer>();
+    /** Counters of failed inserts and lookups */
+    protected TFDiagnostics diagnostics = new TFDiagnostics();
+    /** Metrics of the buffer, exported through JMX */
+    protected TFMetrics metrics = new TFMetrics(this);
+    /** Per-thread storage that is reused by lookups */
+    private static final ThreadLocal<LookupScratch> lookupScratch = new ThreadLocal<LookupScratch>() {
+        protected LookupScratch initialValue() {
+            return new LookupScratch();
+        }
+    };
+    /** Sides of the search of lookupLists: from the source, target and fixed frame */
+    private static final int SOURCE = 0;
+    private static final int TARGET = 1;
+    private static final int FIXED = 2;
+    /**
+     * TF name prefix, with which frame ID's that do not start with "/" are resolved (empty by default). The
+     * shard of a frame is the namespace of its resolved ID, i.e., the first path component (see getNamespace),
+     * so frames resolved with a prefix end up in the shard of the first component of the prefix.
+     */
     protected String tfPrefix = "";
     
     /**
      * Returns the TFListener instance.
      */    
     public synchronized static TFListener getInstance() {
+        return getInstance(true);
+    }
+    
+    /**
+     * Returns the TFListener instance. If it does not exist yet and spin is false, it is created without
+     * a spin thread of its own, and the application has to spin ROS (e.g. with {@link Ros#spin(int)}
+     * or an AsyncSpinner) for /tf messages to reach the buffer.
+     */    
+    public synchronized static TFListener getInstance(boolean spin) {
         if (instance == null) {
-            instance = new TFListener();
+            instance = new TFListener(true, spin);
         }
         return instance;
     }
@@ -100,12 +144,34 @@ public class TFListener {
      * and runs it in a separate thread. 
      */    
     protected TFListener() {
-		initRos("tfjava_listener");
-		
-		if (initListener()) {
-		    spinInSeperateThread();
-		}
-	}	
+        this(true);
+    }
+    
+    /**
+     * Class constructor. If listen is false, ROS is not initialized and the buffer is only filled
+     * through {@link #setTransform}. This allows using the buffer without a ROS master, e.g. for
+     * benchmarking. Frame ID's passed to an offline listener must be fully resolved.
+     */    
+    protected TFListener(boolean listen) {
+        this(listen, true);
+    }
+    
+    /**
+     * Class constructor. If spin is false, the listener subscribes to /tf but leaves spinning to the
+     * application, which can then choose the spinner (and its threads) that delivers the messages.
+     */    
+    protected TFListener(boolean listen, boolean spin) {
+        initBuffer();
+        
+        if (listen) {
+            initRos("tfjava_listener");
+            registerMetrics("tfjava_listener");
+            
+            if (initListener() && spin) {
+                spinInSeperateThread();
+            }
+        }
+    }
 	
     /**
      * Initializes ROS.
@@ -119,12 +185,17 @@ public class TFListener {
 		rosNode = ros.createNodeHandle();
 	}
 	
+    /**
+     * Initializes the (empty) transform buffer.
+     */    
+    protected void initBuffer() {
+        shards = new ConcurrentHashMap<String, Shard>();
+    }
+	
 	/** 
 	 * Initializes the listener.
 	 */	
 	protected boolean initListener() {
-        frames = new HashMap<String, Frame>();    
-	    
 	    try {           
             TFCallback callback = new TFCallback();         
             Subscriber<tfMessage> sub = rosNode.subscribe("/tf", new tfMessage(), callback, 10);  // 10: magic numer
@@ -175,25 +246,26 @@ public class TFListener {
 	    String frameID = assertResolved(tfPrefix, transform.header.frame_id);
  
 	    boolean errorExists = false;
-	    if (childFrameID == frameID) {
-	        ros.logError("TF_SELF_TRANSFORM: Ignoring transform with frame_id and child_frame_id  \"" + childFrameID + "\" because they are the same");
+	    if (childFrameID.equals(frameID)) {
+	        report(TFStatus.SELF_TRANSFORM, frameID, childFrameID);
 	        errorExists = true;
 	    }
 
-	    if (childFrameID == "/") { //empty frame id will be mapped to "/"
-	        ros.logError("TF_NO_CHILD_FRAME_ID: Ignoring transform because child_frame_id not set ");
+	    if (childFrameID.equals("/")) { //empty frame id will be mapped to "/"
+	        report(TFStatus.NO_CHILD_FRAME_ID, frameID, childFrameID);
 	        errorExists = true;
 	    }
 
-	    if (frameID == "/") { //empty parent id will be mapped to "/"
-	        ros.logError("TF_NO_FRAME_ID: Ignoring transform with child_frame_id \"" + childFrameID + "\" because frame_id not set");
+	    if (frameID.equals("/")) { //empty parent id will be mapped to "/"
+	        report(TFStatus.NO_FRAME_ID, frameID, childFrameID);
 	        errorExists = true;
 	    }
 
 	    if (errorExists) return false;	    
 	    
 	    // lookup or insert child frame
-	    Frame frame = lookupOrInsertFrame(childFrameID);
+	    Shard shard = lookupOrInsertShard(childFrameID);
+	    Frame frame = shard.lookupOrInsertFrame(childFrameID);
 	    
 	    // convert tf message to JTransform datastructure
 	    transform.child_frame_id = childFrameID;
@@ -201,8 +273,13 @@ public class TFListener {
 	    TransformStorage tf = transformStampedMsgToTF(transform);
 	    
 	    // try to insert tf in corresponding time cache. If result is FALSE, the tf contains old data.
-	    if (!frame.insertData(tf)) {
-	        ros.logWarn("TF_OLD_DATA ignoring data from the past for frame \"" + childFrameID + "\" at time " + ((double)tf.getTimeStamp() / 1E9));
+	    // Inserts are serialized per shard; the time caches of a frame are only modified under its shard's lock.
+	    boolean inserted;
+	    synchronized (shard) {
+	        inserted = frame.insertData(tf);
+	    }
+	    if (!inserted) {
+	        report(TFStatus.OLD_DATA, frameID, childFrameID);
             return false;
 	    }
 
@@ -211,15 +288,65 @@ public class TFListener {
 	
     /**
      * Looks up and returns the frame belonging to the given frame ID.
-     * If the frame does not exist yet, it is first added to the map.
+     * If the frame does not exist yet, it is first added to the shard of its namespace.
      */    
 	protected Frame lookupOrInsertFrame(String frameID) {
-        Frame frame = frames.get(frameID);
-        if (frame == null) {
-            frame = new Frame(frameID, MAX_STORAGE_TIME);
-            frames.put(frameID, frame);
-        }	    
-        return frame;
+        return lookupOrInsertShard(frameID).lookupOrInsertFrame(frameID);
+	}
+	
+    /**
+     * Returns the frame belonging to the given (resolved) frame ID, or null if it does not exist.
+     */    
+	protected Frame getFrame(String frameID) {
+	    Shard shard = shards.get(getNamespace(frameID));
+	    if (shard == null) return null;
+	    return shard.getFrame(frameID);
+	}
+	
+    /**
+     * Looks up and returns the shard containing the frames in the namespace of the given frame ID.
+     * If the shard does not exist yet, it is first added to the map.
+     */    
+	protected Shard lookupOrInsertShard(String frameID) {
+	    String namespace = getNamespace(frameID);
+	    Shard shard = shards.get(namespace);
+	    if (shard == null) {
+	        Shard newShard = new Shard(namespace, MAX_STORAGE_TIME, metrics);
+	        shard = shards.putIfAbsent(namespace, newShard);
+	        if (shard == null) shard = newShard;
+	    }
+	    return shard;
+	}
+	
+	/**
+	 * Removes all frames in the given namespace (e.g., "/robot1") and their transforms from the buffer.
+	 * Returns false if the buffer did not contain any frames in this namespace.
+	 * 
+	 * Transforms of frames in other namespaces whose parent frame is in the removed namespace are kept, but
+	 * can no longer be connected to the removed frames.
+	 */
+	public boolean removeNamespace(String namespace) {
+	    if (namespace.length() > 0 && !namespace.startsWith("/")) {
+	        namespace = "/" + namespace;
+	    }
+	    return shards.remove(namespace) != null;
+	}
+	
+	/**
+	 * Returns the namespaces of which the buffer contains frames; "" is the global namespace.
+	 */
+	public Set<String> getNamespaces() {
+	    return shards.keySet();
+	}
+	
+	/**
+	 * Returns the namespace of the given resolved frame ID, which is its first component if the ID has more
+	 * than one component ("/robot1/base_link" has namespace "/robot1"), or "" otherwise ("/map").
+	 */
+	protected static String getNamespace(String frameID) {
+	    int end = frameID.indexOf('/', 1);
+	    if (end < 0) return "";
+	    return frameID.substring(0, end);
 	}
     
     /* **********************************************************************
@@ -291,48 +418,18 @@ public class TFListener {
             return out;
         }
 
-        // lookup source and target frame
-        Frame sourceFrame = frames.get(resolvedSourceID);
-        Frame targetFrame = frames.get(resolvedTargetID);
-        
-        if (sourceFrame == null) {
-            ros.logError("Cannot transform: source frame \"" + resolvedSourceID + "\" does not exist.");
-            return null;
-        }    
-            
-        if (targetFrame == null) {
-            ros.logError("Cannot transform: target frame \"" + resolvedTargetID + "\" does not exist.");
-            return null;
-        } 
-	    
-        // list that will contain transformations from source frame to some frame F        
-	    LinkedList<TransformStorage> inverseTransforms = new LinkedList<TransformStorage>();
-	    // list that will contain transformations from frame F to target frame
-	    LinkedList<TransformStorage> forwardTransforms = new LinkedList<TransformStorage>();
-	    
-	    // fill the lists using lookupLists. If it returns FALSE, no transformation could be found.
-	    if (!lookupLists(targetFrame, sourceFrame, time.totalNsecs(), inverseTransforms, forwardTransforms)) {
-	        // TODO give warning
-	        ros.logError("Cannot transform: source + \"" + resolvedSourceID + "\" and target \""
-	                        + resolvedTargetID + "\" are not connected.");
+	    // compose the transform directly into the matrix of the result
+	    StampedTransform out = StampedTransform.getIdentity();
+	    TFStatus status = lookupMatrix(resolvedTargetID, resolvedSourceID, time.totalNsecs(), out.getMatrix4(),
+	                                    lookupScratch.get().matrix);
+	    if (status != TFStatus.OK) {
+	        report(status, resolvedTargetID, resolvedSourceID);
 	        return null;
-	    }        
+	    }
 	    
-	    // create an identity transform with the correct time stamp
-	    StampedTransform out = StampedTransform.getIdentity();	    
 	    out.timeStamp = time;
-	    
-        // multiply all transforms from source frame to frame F TODO: right?
-        for(TransformStorage t : inverseTransforms) {           
-            out.mul(StorageToStampedTransform(t));
-        }
-	    
-	    // multiply all transforms from frame F to target frame TODO: right?
-	    for(TransformStorage t : forwardTransforms) {	        
-	        out.mul(StorageToStampedTransform(t).invert(), out);
-        }	    
-	    
-	    // return transform
+	    out.frameID = resolvedTargetID;
+	    out.childFrameID = resolvedSourceID;
 	    return out;
 	}
 	
@@ -341,17 +438,230 @@ public class TFListener {
      * targetTime, based on a given fixed frame; returns null if no transformation could be found.
      */
 	public StampedTransform lookupTransform(String targetID, Time targetTime, String sourceID, Time sourceTime, String fixedID) {	    
-	    // lookup transform from source to fixed frame, at sourceTime
-	    StampedTransform t1 = lookupTransform(fixedID, sourceID, sourceTime);
-	    // lookup transform from fixed frame to target frame, at targetTime
-	    StampedTransform t2 = lookupTransform(targetID, fixedID, targetTime);
+	    StampedTransform out = StampedTransform.getIdentity();
+	    if (lookupTransform(targetID, targetTime, sourceID, sourceTime, fixedID, out.getMatrix4()) != TFStatus.OK) {
+	        return null;
+	    }
 	    
-	    // if either of the two transformations did not succeed, return null
-	    if (t1 == null || t2 == null) return null;	    
+	    out.timeStamp = targetTime;
+	    out.frameID = assertResolved(tfPrefix, targetID);
+	    out.childFrameID = assertResolved(tfPrefix, sourceID);
+	    return out;
+	}
+	
+	/**
+	 * Stores the transform from the specified source frame at sourceTime to the target frame at targetTime,
+	 * based on a given fixed frame, in out, and returns TFStatus.OK; otherwise returns the reason why no
+	 * transformation could be found. Failures are counted in the diagnostics, but not logged individually.
+	 */
+	public TFStatus lookupTransform(String targetID, Time targetTime, String sourceID, Time sourceTime,
+	                                                    String fixedID, Matrix4d out) {
+	    String resolvedTargetID = assertResolved(tfPrefix, targetID);
+	    String resolvedSourceID = assertResolved(tfPrefix, sourceID);
+	    String resolvedFixedID = assertResolved(tfPrefix, fixedID);
 	    
-	    // multiply transformation t2 with t1, and return
-	    t2.mul(t1);
-	    return t2;
+	    TFStatus status = lookupFixedMatrix(resolvedTargetID, targetTime.totalNsecs(), resolvedSourceID,
+	                                        sourceTime.totalNsecs(), resolvedFixedID, out);
+	    if (status != TFStatus.OK) {
+	        report(status, resolvedTargetID, resolvedSourceID);
+	    }
+	    return status;
+	}
+	
+	/**
+	 * Stores the transform from the given (resolved) source frame at sourceTime to the target frame at
+	 * targetTime, through the fixed frame, in out. Returns the status of the lookup; failures are neither
+	 * logged nor counted.
+	 * 
+	 * If the fixed frame is the source or target frame, or both times are equal, one of the two legs is
+	 * the identity (or they can be joined), so a lookup from source to target suffices. Otherwise the legs
+	 * source -> fixed and fixed -> target are found by a single search (see lookupLists), evaluated at
+	 * sourceTime and targetTime respectively, and composed into shared per-thread matrices.
+	 */
+	protected TFStatus lookupFixedMatrix(String targetFrameID, long targetTime, String sourceFrameID, long sourceTime,
+	                                                    String fixedFrameID, Matrix4d out) {
+	    LookupScratch s = lookupScratch.get();
+	    
+	    if (fixedFrameID.equals(targetFrameID) || targetTime == sourceTime) {
+	        return lookupMatrix(targetFrameID, sourceFrameID, sourceTime, out, s.matrix);
+	    }
+	    if (fixedFrameID.equals(sourceFrameID)) {
+	        return lookupMatrix(targetFrameID, sourceFrameID, targetTime, out, s.matrix);
+	    }
+	    
+	    boolean measured = metrics.isEnabled();
+	    long start = measured ? startLookup() : 0;
+	    
+	    s.inverseCaches.clear();
+	    s.forwardCaches.clear();
+	    s.fixedInverseCaches.clear();
+	    s.fixedForwardCaches.clear();
+	    
+	    // find both legs at once
+	    TFStatus status = TFStatus.OK;
+	    Frame sourceFrame = getFrame(sourceFrameID);
+	    Frame targetFrame = getFrame(targetFrameID);
+	    Frame fixedFrame = getFrame(fixedFrameID);
+	    if (sourceFrame == null) {
+	        status = TFStatus.NO_SOURCE_FRAME;
+	    } else if (targetFrame == null || fixedFrame == null) {
+	        status = TFStatus.NO_TARGET_FRAME;
+	    } else if (!lookupLists(targetFrame, targetTime, sourceFrame, sourceTime, fixedFrame, s.inverseCaches,
+	                            s.forwardCaches, s.fixedInverseCaches, s.fixedForwardCaches)) {
+	        status = TFStatus.NOT_CONNECTED;
+	    }
+	    
+	    // compose the transform from source to fixed frame at sourceTime, and from fixed to target frame
+	    // at targetTime
+	    if (status == TFStatus.OK
+	            && !(composePath(s.inverseCaches, s.forwardCaches, sourceTime, s.fixedMatrix, s.matrix)
+	                 && composePath(s.fixedInverseCaches, s.fixedForwardCaches, targetTime, out, s.matrix))) {
+	        // part of the path was removed from the buffer in the meantime
+	        status = TFStatus.NOT_CONNECTED;
+	    }
+	    if (status == TFStatus.OK) {
+	        out.mul(s.fixedMatrix);
+	    }
+	    
+	    if (measured) endLookup(start, status);
+	    return status;
+	}
+	
+	/**
+	 * Stores the transform from the specified source frame to the target frame at a given time in out, and
+	 * returns TFStatus.OK; otherwise returns the reason why no transformation could be found. Failures are
+	 * counted in the diagnostics, but not logged individually.
+	 */
+	public TFStatus lookupTransform(String targetFrameID, String sourceFrameID, Time time, Matrix4d out) {
+	    String resolvedTargetID = assertResolved(tfPrefix, targetFrameID);
+	    String resolvedSourceID = assertResolved(tfPrefix, sourceFrameID);
+	    
+	    TFStatus status = lookupMatrix(resolvedTargetID, resolvedSourceID, time.totalNsecs(), out, lookupScratch.get().matrix);
+	    if (status != TFStatus.OK) {
+	        report(status, resolvedTargetID, resolvedSourceID);
+	    }
+	    return status;
+	}
+	
+	/**
+	 * Computes the velocity of the tracking frame relative to the observation frame at the given time, by
+	 * differentiating the transform between the two frames over averagingInterval (centered around time).
+	 * The path between the frames is resolved once and evaluated at both ends of the interval.
+	 * 
+	 * The twist is stored in twistOut as [vx, vy, vz, wx, wy, wz]: the linear velocity of the origin of the
+	 * tracking frame (m/s) and the angular velocity of the tracking frame (rad/s), both expressed in the
+	 * observation frame. Returns TFStatus.OK, or the reason why the transform could not be found.
+	 */
+	public TFStatus lookupTwist(String trackingFrameID, String observationFrameID, Time time,
+	                                        Duration averagingInterval, double[] twistOut) {
+	    long interval = averagingInterval.totalNsecs();
+	    if (interval <= 0) {
+	        throw new IllegalArgumentException("averaging interval must be positive");
+	    }
+	    
+	    String resolvedTrackingID = assertResolved(tfPrefix, trackingFrameID);
+	    String resolvedObservationID = assertResolved(tfPrefix, observationFrameID);
+	    
+	    // resolve the path once, at the requested time
+	    long startTime = time.totalNsecs() - interval / 2;
+	    long endTime = startTime + interval;
+	    boolean measured = metrics.isEnabled();
+	    long lookupStart = measured ? startLookup() : 0;
+	    LookupScratch s = lookupScratch.get();
+	    ArrayList<TimeCache> inverseCaches = s.inverseCaches;
+	    ArrayList<TimeCache> forwardCaches = s.forwardCaches;
+	    TFStatus status = findPath(resolvedObservationID, resolvedTrackingID, time.totalNsecs(),
+	                                            inverseCaches, forwardCaches);
+
+	    // evaluate the path at the start and end of the interval
+	    Matrix4d start = s.twistStart;
+	    Matrix4d end = s.twistEnd;
+	    Matrix4d scratch = s.matrix;
+	    if (status == TFStatus.OK
+	            && !(composePath(inverseCaches, forwardCaches, startTime, start, scratch)
+	                 && composePath(inverseCaches, forwardCaches, endTime, end, scratch))) {
+	        // part of the path was removed from the buffer in the meantime
+	        status = TFStatus.NOT_CONNECTED;
+	    }
+	    if (measured) endLookup(lookupStart, status);
+	    if (status != TFStatus.OK) {
+	        report(status, resolvedObservationID, resolvedTrackingID);
+	        return status;
+	    }
+	    
+	    double dt = (double)interval / 1E9;
+	    
+	    // linear velocity: difference of the positions of the tracking frame origin
+	    twistOut[0] = (end.m03 - start.m03) / dt;
+	    twistOut[1] = (end.m13 - start.m13) / dt;
+	    twistOut[2] = (end.m23 - start.m23) / dt;
+	    
+	    // angular velocity: rotation from start to end orientation (end * start^T), as axis times angle
+	    Matrix3d startRotation = s.startRotation;
+	    Matrix3d deltaRotation = s.deltaRotation;
+	    start.getRotationScale(startRotation);
+	    end.getRotationScale(deltaRotation);
+	    startRotation.transpose();
+	    deltaRotation.mul(startRotation);
+	    AxisAngle4d delta = s.deltaAngle;
+	    delta.set(deltaRotation);
+	    twistOut[3] = delta.x * delta.angle / dt;
+	    twistOut[4] = delta.y * delta.angle / dt;
+	    twistOut[5] = delta.z * delta.angle / dt;
+	    
+	    return TFStatus.OK;
+	}
+	
+	/**
+	 * Fills the lists with the time caches on the path from the given (resolved) source frame to the target
+	 * frame at the given time, see lookupLists; the lists are cleared first. Returns TFStatus.OK if a path was
+	 * found, otherwise the reason why not.
+	 */
+	protected TFStatus findPath(String targetFrameID, String sourceFrameID, long time,
+	                ArrayList<TimeCache> inverseCaches, ArrayList<TimeCache> forwardCaches) {
+	    inverseCaches.clear();
+	    forwardCaches.clear();
+	    
+	    Frame sourceFrame = getFrame(sourceFrameID);
+	    if (sourceFrame == null) return TFStatus.NO_SOURCE_FRAME;
+	    Frame targetFrame = getFrame(targetFrameID);
+	    if (targetFrame == null) return TFStatus.NO_TARGET_FRAME;
+	    
+	    if (sourceFrame != targetFrame
+	            && !lookupLists(targetFrame, sourceFrame, time, inverseCaches, forwardCaches)) {
+	        return TFStatus.NOT_CONNECTED;
+	    }
+	    return TFStatus.OK;
+	}
+	
+	/**
+	 * Stores the transform along the given path (as found by findPath), evaluated at the given time, in out;
+	 * scratch is used as temporary storage. Returns false if a transform on the path is no longer available.
+	 * 
+	 * This is the only place where lookups retrieve (interpolate) transforms from the buffer: the search only
+	 * determines which time caches are on the path. How the transforms are retrieved is added to the
+	 * per-thread retrieval of the current lookup, see startLookup.
+	 */
+	protected boolean composePath(ArrayList<TimeCache> inverseCaches, ArrayList<TimeCache> forwardCaches,
+	                                            long time, Matrix4d out, Matrix4d scratch) {
+	    LookupScratch s = lookupScratch.get();
+	    TransformStorage interpolated = s.interpolated;
+	    TFMetrics.Retrieval retrieval = s.retrieval;
+	    out.setIdentity();
+	    for(int i = 0; i < inverseCaches.size(); i++) {
+	        TransformStorage ts = inverseCaches.get(i).getData(time, interpolated, retrieval);
+	        if (ts == null) return false;
+	        scratch.set(ts.getRotation(), ts.getTranslation(), 1);
+	        out.mul(scratch);
+	    }
+	    for(int i = 0; i < forwardCaches.size(); i++) {
+	        TransformStorage ts = forwardCaches.get(i).getData(time, interpolated, retrieval);
+	        if (ts == null) return false;
+	        scratch.set(ts.getRotation(), ts.getTranslation(), 1);
+	        scratch.invert();
+	        out.mul(scratch, out);
+	    }
+	    return true;
 	}
 	
 	/**
@@ -362,148 +672,466 @@ public class TFListener {
 	 * time stamps of the transforms from A to B and the given time point. This corresponds to searching for a
 	 * transform path that needs the least amount of inter- and extrapolation.  
 	 * 
+	 * Only the path is recorded, as the time caches of its frame pairs: inverseCaches holds those from
+	 * sourceFrame to some frame F, and forwardCaches those from F to targetFrame. No transforms are
+	 * retrieved; see composePath.
+	 * 
 	 * Note: often in search, if we talk about expanding a search node, we say that the node expands and its
 	 * _children_ are added to the queue. Yet, the tf graph is stored by linking child frames to their _parent_
 	 * frames, not the other way around. So, if a search node is expanded, the _parent_ frames are added to the
 	 * queue. This may be a bit confusing.
 	 */	
     protected boolean lookupLists(Frame targetFrame, Frame sourceFrame, long time,
-            LinkedList<TransformStorage> inverseTransforms, LinkedList<TransformStorage> forwardTransforms) {
-        
-        // wrap the source and target frames in search nodes
-        SearchNode<Frame> sourceNode = new SearchNode<Frame>(sourceFrame);
-        SearchNode<Frame> targetNode = new SearchNode<Frame>(targetFrame);
-        
-        // set beginning of forward path (from source)
-        sourceNode.backwardStep = sourceNode;
-        // set beginning of backward path (form target)
-        targetNode.forwardStep = targetNode;        
-        
-        // create a hash map that map frames to search nodes. This is necessary to keep track of
-        // which frames have already been visited (and from which direction).
-        HashMap<Frame, SearchNode<Frame>> frameToNode = new HashMap<Frame, SearchNode<Frame>>();
-        
-        // add source and target search nodes to the map
-        frameToNode.put(sourceFrame, sourceNode);
-        frameToNode.put(targetFrame, targetNode);
-        
-        // create a priority queue, which will hold the search nodes ordered by cost (descending)
-        PriorityQueue<SearchNode<Frame>> Q = new PriorityQueue<SearchNode<Frame>>();
+            ArrayList<TimeCache> inverseCaches, ArrayList<TimeCache> forwardCaches) {
+        return lookupLists(targetFrame, time, sourceFrame, time, null, inverseCaches, forwardCaches, null, null);
+    }
+    
+    /**
+     * Like lookupLists(targetFrame, sourceFrame, time, ...), but with a time per side. If fixedFrame is not
+     * null, the path goes through the fixed frame: inverseCaches and forwardCaches receive the path from
+     * sourceFrame to fixedFrame (to be evaluated at sourceTime), and fixedInverseCaches and fixedForwardCaches
+     * the path from fixedFrame to targetFrame (to be evaluated at targetTime). The fixed frame must differ
+     * from the source and target frames.
+     * 
+     * Both legs are found by one search, which runs from the source frame (with costs at sourceTime), from
+     * the target frame (at targetTime) and from the fixed frame (at the worse of both times), and ends when
+     * the source and target side have each met the fixed side. Search nodes are taken from the per-thread
+     * LookupScratch rather than allocated.
+     */
+    protected boolean lookupLists(Frame targetFrame, long targetTime, Frame sourceFrame, long sourceTime,
+            Frame fixedFrame, ArrayList<TimeCache> inverseCaches, ArrayList<TimeCache> forwardCaches,
+            ArrayList<TimeCache> fixedInverseCaches, ArrayList<TimeCache> fixedForwardCaches) {
+        LookupScratch s = lookupScratch.get();
+        IdentityHashMap<Frame, SearchNode> visited = s.visited;
+        PriorityQueue<SearchNode> Q = s.queue;
+        SearchNode[] meetings = s.meetings;
+        boolean fixed = (fixedFrame != null);
         
-        // at the source and target search nodes to the queue
-        Q.add(sourceNode); 
-        Q.add(targetNode);
+        // start a side from each of the source, target and fixed frame
+        visit(s, s.newNode(sourceFrame, SOURCE, 0, null, null));
+        visit(s, s.newNode(targetFrame, TARGET, 0, null, null));
+        if (fixed) visit(s, s.newNode(fixedFrame, FIXED, 0, null, null));
         
-        // perform the search
-        while(!Q.isEmpty()) {
+        // perform the search, until the best path of each leg has been found
+        int legsLeft = fixed ? 2 : 1;
+        int expansions = 0;
+        while(legsLeft > 0 && !Q.isEmpty()) {
             // poll most potential search node from queue
-            SearchNode<Frame> frameNode = Q.poll();
-            Frame frame = frameNode.content;
+            SearchNode node = Q.poll();
+            expansions++;
             
-            // if the node is both visited from the source and from the target node, a path has been found
-            if (frameNode.backwardStep != null && frameNode.forwardStep != null) {
-                // found the best path from source to target through FRAME.
-                
-                // create inverse list (from source to FRAME)
-                SearchNode<Frame> node = frameNode;                
-                while(node.content != sourceNode.content) {                    
-                    inverseTransforms.addLast(node.backwardStep.content.getData(time, node.content));
-                    node = node.backwardStep;
+            // a node that joins two sides completes the best path of its leg, if that was not found before
+            if (node.partner != null) {
+                int leg = leg(node.side, node.partner.side, fixed);
+                if (meetings[leg] == null) {
+                    meetings[leg] = node;
+                    legsLeft--;
                 }
-                
-                // create forward list (from FRAME to target)
-                node = frameNode;
-                while(node.content != targetNode.content) {
-                    forwardTransforms.addLast(node.forwardStep.content.getData(time, node.content));
-                    node = node.forwardStep;
-                }
-                return true;
+                continue;
+            }
+            // the side of the node has found its leg (the fixed side takes part in both legs)
+            if ((node.side == SOURCE && meetings[0] != null)
+                    || (node.side == TARGET && meetings[fixed ? 1 : 0] != null)) {
+                continue;
             }
             
             // expand search node
-            for(Frame parentFrame : frame.getParentFrames()) {                
-                SearchNode<Frame> parentFrameNode = frameToNode.get(parentFrame);
-                                
-                boolean addToQueue = false;
-                if (parentFrameNode == null) {
-                    // node was not yet visited
-                    parentFrameNode = new SearchNode<Frame>(parentFrame);                    
-                    frameToNode.put(parentFrame, parentFrameNode);
-                    addToQueue = true;
-                } else {
-                    // node is already visited
-                    if ((parentFrameNode.backwardStep == null && frameNode.forwardStep == null)
-                            || (parentFrameNode.forwardStep == null && frameNode.backwardStep == null)) {
-                        // node was visited, but from other direction.
-                        // create new search node that represents this frame, visited from both sides
-                        // this allows the other search node of this frame to still be expanded first                        
-                        parentFrameNode = new SearchNode<Frame>(parentFrameNode);
-                        addToQueue = true;                        
+            TimeCache[] caches = node.frame.getParentCaches();
+            for(int i = 0; i < caches.length; i++) {
+                TimeCache cache = caches[i];
+                Frame parentFrame = cache.getParentFrame();
+                
+                // skip frames that were already visited from this side
+                SearchNode first = visited.get(parentFrame);
+                boolean visitedBySide = false;
+                for(SearchNode other = first; other != null; other = other.sibling) {
+                    if (other.side == node.side) {
+                        visitedBySide = true;
+                        break;
                     }
-                }                
-                                
-                // add search node belonging to parent frame to the queue
-                if (addToQueue) {
-                    // determine cost (based on max absolute difference in time stamp) 
-                    TimeCache cache = frame.getTimeCache(parentFrame);
-                    parentFrameNode.cost = Math.max((double)cache.timeToNearestTransform(time),
-                                                Math.max(parentFrameNode.cost, frameNode.cost));
-                    // if visiting forward (from source), set backward step to remember path 
-                    if (frameNode.backwardStep != null) parentFrameNode.backwardStep = frameNode;
-                    // if visiting backward (from target), set forward step to remember path
-                    if (frameNode.forwardStep != null) parentFrameNode.forwardStep = frameNode;
-                    // add node to queue
-                    Q.add(parentFrameNode);
+                }
+                if (visitedBySide) continue;
+                
+                // determine cost (based on max absolute difference in time stamp)
+                long distance;
+                if (node.side == FIXED) {
+                    distance = Math.max(cache.timeToNearestTransform(sourceTime), cache.timeToNearestTransform(targetTime));
+                } else {
+                    distance = cache.timeToNearestTransform(node.side == SOURCE ? sourceTime : targetTime);
+                }
+                double cost = Math.max((double)distance, node.cost);
+                
+                // if the frame was visited from a side this side forms a leg with, add a search node that
+                // joins both sides; this allows the search node of the other side to still be expanded first
+                boolean joinsAllLegs = false;
+                for(SearchNode other = first; other != null; other = other.sibling) {
+                    int leg = leg(node.side, other.side, fixed);
+                    if (leg < 0) continue;
+                    SearchNode meeting = s.newNode(parentFrame, node.side, Math.max(cost, other.cost), node, cache);
+                    meeting.partner = other;
+                    Q.add(meeting);
+                    // the fixed side continues for the leg to the other side
+                    joinsAllLegs = (node.side != FIXED);
+                }
+                
+                // otherwise, continue the search of this side through the frame
+                if (!joinsAllLegs) {
+                    visit(s, s.newNode(parentFrame, node.side, cost, node, cache));
                 }
             }
-        }    
+        }
+        if (metrics.isEnabled()) metrics.recordSearch(expansions);
         
-        // target and source frames are not connected.        
-        return false;
+        boolean found = (legsLeft == 0);
+        if (found) {
+            // the first leg runs from the source side to the fixed (or target) side, the second from the
+            // fixed side to the target side
+            addPath(meetings[0], SOURCE, inverseCaches, forwardCaches);
+            if (fixed) addPath(meetings[1], FIXED, fixedInverseCaches, fixedForwardCaches);
+        }
+        s.endSearch();
+        return found;
+    }
+    
+    /**
+     * Marks the frame of the given search node as visited from its side, and adds the node to the queue.
+     */
+    private static void visit(LookupScratch s, SearchNode node) {
+        node.sibling = s.visited.put(node.frame, node);
+        s.queue.add(node);
+    }
+    
+    /**
+     * Returns the leg of lookupLists that is found when the given sides meet: 0 for the path from the source
+     * frame to the fixed (or target) frame, 1 for the path from the fixed frame to the target frame, or -1
+     * if the sides do not form a leg.
+     */
+    private static int leg(int side, int otherSide, boolean fixed) {
+        if (side == otherSide) return -1;
+        if (!fixed) return 0;
+        if (side == FIXED) return otherSide;
+        if (otherSide == FIXED) return side;
+        return -1;
+    }
+    
+    /**
+     * Adds the time caches of the path of the given joining search node to the lists: those from the start
+     * frame of inverseSide to the frame of the node to inverseCaches, the others to forwardCaches. Both lists
+     * are ordered from the frame of the node outwards.
+     */
+    private static void addPath(SearchNode meeting, int inverseSide,
+            ArrayList<TimeCache> inverseCaches, ArrayList<TimeCache> forwardCaches) {
+        SearchNode inverseNode = (meeting.side == inverseSide) ? meeting : meeting.partner;
+        SearchNode forwardNode = (meeting.side == inverseSide) ? meeting.partner : meeting;
+        for(SearchNode node = inverseNode; node.previous != null; node = node.previous) {
+            inverseCaches.add(node.cache);
+        }
+        for(SearchNode node = forwardNode; node.previous != null; node = node.previous) {
+            forwardCaches.add(node.cache);
+        }
     }
     
     /**
-     * Wrapper search node that can be used for bi-directional best-first search. 
-     * Keeps track of search path by maintaining links to parent nodes, in both directions
-     * (i.e., from source and from target node).
+     * Search node of lookupLists, representing a frame that is reached from one side of the search.
+     * Keeps track of the search path by maintaining a link to the node it was reached from.
      * 
      * @author Sjoerd van den Dries
-     * @param <V> Content type of the search node
      */    
-    protected class SearchNode<V> implements Comparable<SearchNode<V>> {        
-        /** Content of search node */
-        V content;
+    protected static class SearchNode implements Comparable<SearchNode> {        
+        /** Frame of search node */
+        Frame frame;
+        /** Side of the search that reached the frame (SOURCE, TARGET or FIXED) */
+        int side;
         /** Cost of path up and until this search node */
         double cost;
-        /** Refers to parent node in forward path */
-        SearchNode<V> backwardStep;
-        /** Refers to parent node in backward path */
-        SearchNode<V> forwardStep;        
-        
-        /** Default constructor; sets specified content and cost to 0, steps to null. */
-        SearchNode(V content) {
-            this.content = content;
-            this.cost = 0;
-            this.backwardStep = null;
-            this.forwardStep = null;
-        }
-        
-        /** Copy constructor */
-        SearchNode(SearchNode<V> orig) {
-            this.content = orig.content;
-            this.cost = orig.cost;
-            this.backwardStep = orig.backwardStep;
-            this.forwardStep = orig.forwardStep;
-        }
+        /** Node this node was reached from, or null at the start of a side */
+        SearchNode previous;
+        /** Time cache of the transforms from the frame of previous to the frame of this node */
+        TimeCache cache;
+        /** If this node joins two sides, the node of the other side at the same frame */
+        SearchNode partner;
+        /** Next node that visited the same frame from another side */
+        SearchNode sibling;
         
         /** Comparator method: low cost < high cost. */
-        public int compareTo(SearchNode<V> other) {
+        public int compareTo(SearchNode other) {
             if (this.cost < other.cost) return -1;
             if (this.cost > other.cost) return 1;
             return 0;
         }        
         
     }
+    
+    /**
+     * Storage that is reused by all lookups of one thread, to avoid allocating it for every lookup.
+     */
+    protected static class LookupScratch {
+        /** Visited frames of lookupLists, mapped to the last node that visited them */
+        final IdentityHashMap<Frame, SearchNode> visited = new IdentityHashMap<Frame, SearchNode>();
+        /** Search queue of lookupLists */
+        final PriorityQueue<SearchNode> queue = new PriorityQueue<SearchNode>();
+        /** Search nodes of lookupLists; the first usedNodes are in use by the current search */
+        final ArrayList<SearchNode> nodes = new ArrayList<SearchNode>();
+        int usedNodes;
+        /** Joining search nodes of the legs found by lookupLists */
+        final SearchNode[] meetings = new SearchNode[2];
+        /** Time caches on the path found by findPath, or on the source leg of lookupFixedMatrix */
+        final ArrayList<TimeCache> inverseCaches = new ArrayList<TimeCache>();
+        final ArrayList<TimeCache> forwardCaches = new ArrayList<TimeCache>();
+        /** Time caches on the target leg of lookupFixedMatrix */
+        final ArrayList<TimeCache> fixedInverseCaches = new ArrayList<TimeCache>();
+        final ArrayList<TimeCache> fixedForwardCaches = new ArrayList<TimeCache>();
+        /** Scratch matrix of lookupMatrix */
+        final Matrix4d matrix = new Matrix4d();
+        /** Transform and pose of the bulk methods */
+        final Matrix4d bulkTransform = new Matrix4d();
+        final Matrix4d bulkPose = new Matrix4d();
+        /** Transform from source to fixed frame of lookupFixedMatrix */
+        final Matrix4d fixedMatrix = new Matrix4d();
+        /** Transforms at the start and end of the interval of lookupTwist, and their rotations */
+        final Matrix4d twistStart = new Matrix4d();
+        final Matrix4d twistEnd = new Matrix4d();
+        final Matrix3d startRotation = new Matrix3d();
+        final Matrix3d deltaRotation = new Matrix3d();
+        final AxisAngle4d deltaAngle = new AxisAngle4d();
+        /** Interpolated transform of composePath, valid until the next transform of the path is evaluated */
+        final TransformStorage interpolated = new TransformStorage(new Vector3d(), new Quat4d(), 0, null, null);
+        /** How the transforms of the current lookup were retrieved, for the metrics */
+        final TFMetrics.Retrieval retrieval = new TFMetrics.Retrieval();
+        
+        /** Returns an unused search node, initialized with the given values. */
+        SearchNode newNode(Frame frame, int side, double cost, SearchNode previous, TimeCache cache) {
+            if (usedNodes == nodes.size()) {
+                nodes.add(new SearchNode());
+            }
+            SearchNode node = nodes.get(usedNodes++);
+            node.frame = frame;
+            node.side = side;
+            node.cost = cost;
+            node.previous = previous;
+            node.cache = cache;
+            node.partner = null;
+            node.sibling = null;
+            return node;
+        }
+        
+        /** Releases the search nodes and frames of the last search, so that they can be garbage collected. */
+        void endSearch() {
+            for(int i = 0; i < usedNodes; i++) {
+                SearchNode node = nodes.get(i);
+                node.frame = null;
+                node.previous = null;
+                node.cache = null;
+                node.partner = null;
+                node.sibling = null;
+            }
+            usedNodes = 0;
+            visited.clear();
+            queue.clear();
+            meetings[0] = null;
+            meetings[1] = null;
+        }
+    }
+	
+    /* **********************************************************************
+     * *                           BULK METHODS                             *
+     * ********************************************************************** */
+    
+    /*
+     * The bulk methods are meant for callers outside the JVM (e.g., Prolog, Lisp or Matlab bridges), for
+     * which every call and every returned object is expensive. Frames are referred to by index (see
+     * getFrameIndex), times are given in seconds, and poses and points are passed in flat arrays: a pose
+     * is a row-based 4x4 matrix of 16 elements, a point is [x,y,z]. Results are written to caller-provided
+     * arrays, so that a whole batch of lookups crosses the language boundary only once.
+     */
+    
+    /**
+     * Returns the index of the given frame ID for use in the bulk methods, registering the ID if necessary.
+     * The frame does not need to exist (yet); indices remain valid for the lifetime of the listener.
+     * Looking up a registered frame ID does not lock.
+     */
+    public int getFrameIndex(String frameID) {
+        String resolvedID = assertResolved(tfPrefix, frameID);
+        Integer index = frameIndices.get(resolvedID);
+        if (index == null) {
+            index = registerFrameID(resolvedID);
+        }
+        return index;
+    }
+    
+    /**
+     * Registers the given resolved frame ID for the bulk methods, unless another thread registered it first,
+     * and returns its index.
+     */
+    private synchronized Integer registerFrameID(String resolvedID) {
+        Integer index = frameIndices.get(resolvedID);
+        if (index == null) {
+            String[] ids = new String[indexedFrameIDs.length + 1];
+            System.arraycopy(indexedFrameIDs, 0, ids, 0, indexedFrameIDs.length);
+            index = indexedFrameIDs.length;
+            ids[index] = resolvedID;
+            HashMap<String, Integer> indices = new HashMap<String, Integer>(frameIndices);
+            indices.put(resolvedID, index);
+            // publish the ID before its index, so that every index that can be read also has an ID
+            indexedFrameIDs = ids;
+            frameIndices = indices;
+        }
+        return index;
+    }
+    
+    /**
+     * Returns the indices of the given frame ID's, see getFrameIndex.
+     */
+    public int[] getFrameIndices(String[] frameIDs) {
+        int[] indices = new int[frameIDs.length];
+        for(int i = 0; i < frameIDs.length; i++) {
+            indices[i] = getFrameIndex(frameIDs[i]);
+        }
+        return indices;
+    }
+    
+    /**
+     * Returns the (resolved) frame ID belonging to the given frame index.
+     */
+    public String getFrameID(int frameIndex) {
+        return indexedFrameIDs[frameIndex];
+    }
+    
+    /**
+     * Looks up n transforms from sourceIndices[i] to targetIndices[i] at times secs[i], and writes them as
+     * row-based 4x4 matrices to posesOut, starting at posesOut[16 * i]. Poses of transforms that could not
+     * be found are filled with NaN, and counted in the diagnostics. Returns the number of transforms that
+     * were found.
+     */
+    public int lookupTransforms(int n, int[] targetIndices, int[] sourceIndices, double[] secs, double[] posesOut) {
+        String[] ids = indexedFrameIDs;
+        LookupScratch s = lookupScratch.get();
+        Matrix4d transform = s.bulkTransform;
+        int found = 0;
+        
+        for(int i = 0; i < n; i++) {
+            String targetID = ids[targetIndices[i]], sourceID = ids[sourceIndices[i]];
+            TFStatus status = lookupMatrix(targetID, sourceID, secondsToNsecs(secs[i]), transform, s.matrix);
+            if (status == TFStatus.OK) {
+                Utils.matrix4dToPoseArray(transform, posesOut, 16 * i);
+                found++;
+            } else {
+                fillNaN(posesOut, 16 * i, 16);
+                report(status, targetID, sourceID);
+            }
+        }
+        return found;
+    }
+    
+    /**
+     * Transforms n points pointsIn[3 * i .. 3 * i + 2], stamped with frame sourceIndices[i] and time secs[i],
+     * to the target frame, and writes them to pointsOut (which may be the same array as pointsIn). Points
+     * that could not be transformed are filled with NaN, and counted in the diagnostics. Returns the number of
+     * points that were transformed.
+     */
+    public int transformPoints(int n, int targetIndex, int[] sourceIndices, double[] secs,
+                                                    double[] pointsIn, double[] pointsOut) {
+        String[] ids = indexedFrameIDs;
+        LookupScratch s = lookupScratch.get();
+        Matrix4d m = s.bulkTransform;
+        int found = 0;
+        
+        for(int i = 0, j = 0; i < n; i++, j += 3) {
+            String targetID = ids[targetIndex], sourceID = ids[sourceIndices[i]];
+            TFStatus status = lookupMatrix(targetID, sourceID, secondsToNsecs(secs[i]), m, s.matrix);
+            if (status == TFStatus.OK) {
+                double x = pointsIn[j], y = pointsIn[j + 1], z = pointsIn[j + 2];
+                pointsOut[j]     = m.m00 * x + m.m01 * y + m.m02 * z + m.m03;
+                pointsOut[j + 1] = m.m10 * x + m.m11 * y + m.m12 * z + m.m13;
+                pointsOut[j + 2] = m.m20 * x + m.m21 * y + m.m22 * z + m.m23;
+                found++;
+            } else {
+                fillNaN(pointsOut, j, 3);
+                report(status, targetID, sourceID);
+            }
+        }
+        return found;
+    }
+    
+    /**
+     * Transforms n row-based poses posesIn[16 * i .. 16 * i + 15], stamped with frame sourceIndices[i] and
+     * time secs[i], to the target frame, and writes them to posesOut (which may be the same array as posesIn).
+     * Poses that could not be transformed are filled with NaN, and counted in the diagnostics. Returns the number
+     * of poses that were transformed.
+     */
+    public int transformPoses(int n, int targetIndex, int[] sourceIndices, double[] secs,
+                                                    double[] posesIn, double[] posesOut) {
+        String[] ids = indexedFrameIDs;
+        LookupScratch s = lookupScratch.get();
+        Matrix4d transform = s.bulkTransform;
+        Matrix4d pose = s.bulkPose;
+        int found = 0;
+        
+        for(int i = 0; i < n; i++) {
+            String targetID = ids[targetIndex], sourceID = ids[sourceIndices[i]];
+            TFStatus status = lookupMatrix(targetID, sourceID, secondsToNsecs(secs[i]), transform, s.matrix);
+            if (status == TFStatus.OK) {
+                Utils.poseArrayToMatrix4d(posesIn, 16 * i, pose);
+                pose.mul(transform, pose);
+                Utils.matrix4dToPoseArray(pose, posesOut, 16 * i);
+                found++;
+            } else {
+                fillNaN(posesOut, 16 * i, 16);
+                report(status, targetID, sourceID);
+            }
+        }
+        return found;
+    }
+    
+    /**
+     * Stores the transform from the given (resolved) source frame to the target frame at the given time in
+     * out, without creating intermediate StampedTransform objects; scratch is used as temporary storage.
+     * Returns the status of the lookup; failures are neither logged nor counted.
+     */
+    protected TFStatus lookupMatrix(String targetFrameID, String sourceFrameID, long time, Matrix4d out, Matrix4d scratch) {
+        boolean measured = metrics.isEnabled();
+        long start = measured ? startLookup() : 0;
+        
+        LookupScratch s = lookupScratch.get();
+        TFStatus status = findPath(targetFrameID, sourceFrameID, time, s.inverseCaches, s.forwardCaches);
+        if (status == TFStatus.OK && !composePath(s.inverseCaches, s.forwardCaches, time, out, scratch)) {
+            // part of the path was removed from the buffer in the meantime
+            status = TFStatus.NOT_CONNECTED;
+        }
+        
+        if (measured) endLookup(start, status);
+        return status;
+    }
+    
+    /**
+     * Starts measuring a lookup: clears the retrieval of the current thread, and returns the start time
+     * for endLookup. Only call if metrics are enabled.
+     */
+    private long startLookup() {
+        lookupScratch.get().retrieval.reset();
+        return System.nanoTime();
+    }
+    
+    /**
+     * Records the latency of the lookup started at start (see startLookup) and, if it succeeded, how its
+     * transforms were retrieved.
+     */
+    private void endLookup(long start, TFStatus status) {
+        metrics.recordLookup(System.nanoTime() - start);
+        if (status == TFStatus.OK) metrics.recordRetrieval(lookupScratch.get().retrieval);
+    }
+    
+    /** Converts a time stamp in seconds to nanoseconds. */
+    private static long secondsToNsecs(double secs) {
+        return Math.round(secs * 1E9);
+    }
+    
+    /** Fills length elements of the given array with NaN, starting at offset. */
+    private static void fillNaN(double[] array, int offset, int length) {
+        for(int i = offset; i < offset + length; i++) {
+            array[i] = Double.NaN;
+        }
+    }
 	
     /* **********************************************************************
      * *                          HELPER METHODS                            *
@@ -542,7 +1170,7 @@ public class TFListener {
         // create TransformStamped message
 	    TransformStamped msg = new TransformStamped();	    
 	    msg.header.frame_id = tf.getParentFrame().getFrameID();
-	    msg.header.stamp = new Time(tf.getTimeStamp());
+	    msg.header.stamp = Time.fromNsecs(tf.getTimeStamp());
 	    msg.child_frame_id = tf.getChildFrame().getFrameID();
 	    msg.transform.translation = tMsg;
 	    msg.transform.rotation = rMsg;
@@ -555,10 +1183,55 @@ public class TFListener {
 	 * the StampedTransform datastructure (represented by a 4x4 matrix)
 	 */
 	protected StampedTransform StorageToStampedTransform(TransformStorage ts) {
-	    return new StampedTransform(ts.getTranslation(), ts.getRotation(), new Time(ts.getTimeStamp()), 
+	    return new StampedTransform(ts.getTranslation(), ts.getRotation(), Time.fromNsecs(ts.getTimeStamp()), 
 	                    ts.getParentFrame().getFrameID(), ts.getChildFrame().getFrameID());
 	}
 	
+	/**
+	 * Counts an occurrence of the given status for the given frame pair, and logs a summary of the
+	 * occurrences if one is due. Log messages are rate limited per status and frame pair.
+	 */
+	protected void report(TFStatus status, String frameID, String childFrameID) {
+	    String summary = diagnostics.record(status, frameID, childFrameID);
+	    if (summary == null || ros == null) return;
+	    
+	    if (status.isError()) {
+	        ros.logError(summary);
+	    } else {
+	        ros.logWarn(summary);
+	    }
+	}
+	
+	/**
+	 * Returns the counters of failed inserts and lookups.
+	 */
+	public TFDiagnostics getDiagnostics() {
+	    return diagnostics;
+	}
+	
+	/**
+	 * Returns the metrics of the buffer. Metrics are disabled by default, unless the system property
+	 * tfjava.metrics is set to true.
+	 */
+	public TFMetrics getMetrics() {
+	    return metrics;
+	}
+	
+	/**
+	 * Registers the metrics of the buffer with the platform MBean server, under the object name
+	 * "tfjava:type=TFListener,name=" + name. Returns false if registration failed.
+	 */
+	public boolean registerMetrics(String name) {
+	    try {
+	        ObjectName objectName = new ObjectName("tfjava:type=TFListener,name=" + ObjectName.quote(name));
+	        ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, objectName);
+	    } catch (Exception e) {
+	        if (ros != null) ros.logWarn("Could not register tf metrics: " + e);
+	        return false;
+	    }
+	    return true;
+	}
+	
 	/**
 	 * Returns the resolves version of the given frame ID, and asserts a debug message if the name
 	 * was not fully resolved.
@@ -0,0 +1,325 @@
+/* 
+ * Copyright (c) 2011, Sjoerd van den Dries
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Technische Universiteit Eindhoven nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package tfjava;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Metrics of a tf buffer: lookup latencies, search effort, how transforms are retrieved from the time
+ * caches, and inserts and drops per frame pair. The metrics can be read through JMX, see
+ * {@link TFListener#registerMetrics}.
+ * 
+ * Metrics are only collected while enabled; when disabled, recording costs one volatile read. Counters per
+ * frame pair are kept in the time caches themselves. Lookup latency covers the whole lookup: finding the
+ * transform path and retrieving (interpolating) the transforms on it. Retrievals are counted per lookup
+ * as well, see {@link #recordRetrieval}.
+ */
+public class TFMetrics implements TFMetricsMBean {
+    
+    /** Number of buckets of the latency histogram */
+    private static final int NUM_BUCKETS = 64;
+    
+    /** Listener of which the metrics are collected */
+    private TFListener listener;
+    /** Whether metrics are collected */
+    private volatile boolean enabled;
+    /** Time of the last reset (System.nanoTime) */
+    private volatile long resetTime = System.nanoTime();
+    
+    private AtomicLong lookups = new AtomicLong();
+    private AtomicLong latencySum = new AtomicLong();
+    private AtomicLongArray latencyHistogram = new AtomicLongArray(NUM_BUCKETS);
+    private AtomicLong expansions = new AtomicLong();
+    private AtomicLong expansionsMax = new AtomicLong();
+    private AtomicLong exact = new AtomicLong();
+    private AtomicLong interpolated = new AtomicLong();
+    private AtomicLong extrapolated = new AtomicLong();
+    private AtomicLong extrapolationSum = new AtomicLong();
+    private AtomicLong extrapolationMax = new AtomicLong();
+    
+    /**
+     * Class constructor; metrics are initially disabled, unless the system property tfjava.metrics is true.
+     */
+    public TFMetrics(TFListener listener) {
+        this.listener = listener;
+        this.enabled = Boolean.getBoolean("tfjava.metrics");
+    }
+    
+    /* **********************************************************************
+     * *                             RECORDING                              *
+     * ********************************************************************** */
+    
+    /**
+     * Records the latency of a lookup, in nanoseconds. Only call if enabled.
+     */
+    public void recordLookup(long latency) {
+        lookups.incrementAndGet();
+        latencySum.addAndGet(latency);
+        latencyHistogram.incrementAndGet(bucket(latency));
+    }
+    
+    /**
+     * Records the number of search nodes expanded by a lookup. Only call if enabled.
+     */
+    public void recordSearch(int numExpansions) {
+        expansions.addAndGet(numExpansions);
+        updateMax(expansionsMax, numExpansions);
+    }
+    
+    /**
+     * Records how the transforms of a successful lookup were retrieved from the time caches: as extrapolated
+     * (over the largest distance on its path) if any transform was extrapolated, otherwise as interpolated if
+     * any transform was interpolated, otherwise as exact. Lookups that did not retrieve any transform, such
+     * as from a frame to itself, are not counted. Only call if enabled.
+     */
+    public void recordRetrieval(Retrieval retrieval) {
+        if (retrieval.count == 0) return;
+        
+        if (retrieval.extrapolated) {
+            extrapolated.incrementAndGet();
+            extrapolationSum.addAndGet(retrieval.extrapolation);
+            updateMax(extrapolationMax, retrieval.extrapolation);
+        } else if (retrieval.interpolated) {
+            interpolated.incrementAndGet();
+        } else {
+            exact.incrementAndGet();
+        }
+    }
+    
+    /**
+     * Collects how the transforms of one lookup are retrieved from the time caches (see
+     * {@link TimeCache#getData(long, TransformStorage, Retrieval)}), so that the lookup can be recorded
+     * once. A retrieval is used by one thread at a time.
+     */
+    public static class Retrieval {
+        /** Number of retrieved transforms */
+        int count;
+        /** Whether a transform was interpolated */
+        boolean interpolated;
+        /** Whether a transform was extrapolated */
+        boolean extrapolated;
+        /** Largest extrapolation distance, in nanoseconds */
+        long extrapolation;
+        
+        /** Adds a transform retrieved at one of the time stamps of a time cache. */
+        public void addExact() {
+            count++;
+        }
+        
+        /** Adds a transform interpolated between two transforms. */
+        public void addInterpolated() {
+            count++;
+            interpolated = true;
+        }
+        
+        /** Adds a transform extrapolated over the given distance in time, in nanoseconds. */
+        public void addExtrapolated(long distance) {
+            count++;
+            extrapolated = true;
+            extrapolation = Math.max(extrapolation, distance);
+        }
+        
+        /** Clears the retrieval for the next lookup. */
+        public void reset() {
+            count = 0;
+            interpolated = false;
+            extrapolated = false;
+            extrapolation = 0;
+        }
+    }
+    
+    /* **********************************************************************
+     * *                                JMX                                 *
+     * ********************************************************************** */
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+    
+    public void reset() {
+        lookups.set(0);
+        latencySum.set(0);
+        for(int i = 0; i < NUM_BUCKETS; i++) {
+            latencyHistogram.set(i, 0);
+        }
+        expansions.set(0);
+        expansionsMax.set(0);
+        exact.set(0);
+        interpolated.set(0);
+        extrapolated.set(0);
+        extrapolationSum.set(0);
+        extrapolationMax.set(0);
+        for(TimeCache cache : getTimeCaches()) {
+            cache.resetCounters();
+        }
+        resetTime = System.nanoTime();
+    }
+    
+    public long getLookupCount() {
+        return lookups.get();
+    }
+    
+    public double getLookupLatencyMean() {
+        long count = lookups.get();
+        return count == 0 ? 0 : (double)latencySum.get() / count;
+    }
+    
+    public long getLookupLatencyPercentile(double percentile) {
+        long[] histogram = getLookupLatencyHistogram();
+        long count = 0;
+        for(long c : histogram) {
+            count += c;
+        }
+        
+        long threshold = (long)Math.ceil(count * percentile / 100);
+        long cumulative = 0;
+        for(int i = 0; i < NUM_BUCKETS; i++) {
+            cumulative += histogram[i];
+            if (cumulative >= threshold && cumulative > 0) {
+                return i == NUM_BUCKETS - 1 ? Long.MAX_VALUE : (1L << (i + 1));
+            }
+        }
+        return 0;
+    }
+    
+    public long[] getLookupLatencyHistogram() {
+        long[] histogram = new long[NUM_BUCKETS];
+        for(int i = 0; i < NUM_BUCKETS; i++) {
+            histogram[i] = latencyHistogram.get(i);
+        }
+        return histogram;
+    }
+    
+    public long getSearchNodeExpansions() {
+        return expansions.get();
+    }
+    
+    public long getSearchNodeExpansionsMax() {
+        return expansionsMax.get();
+    }
+    
+    public long getExactCount() {
+        return exact.get();
+    }
+    
+    public long getInterpolatedCount() {
+        return interpolated.get();
+    }
+    
+    public long getExtrapolatedCount() {
+        return extrapolated.get();
+    }
+    
+    public double getExtrapolationDistanceMean() {
+        long count = extrapolated.get();
+        return count == 0 ? 0 : (double)extrapolationSum.get() / count;
+    }
+    
+    public long getExtrapolationDistanceMax() {
+        return extrapolationMax.get();
+    }
+    
+    public long getInsertCount() {
+        long count = 0;
+        for(TimeCache cache : getTimeCaches()) {
+            count += cache.getInsertCount();
+        }
+        return count;
+    }
+    
+    public long getDropCount() {
+        long count = 0;
+        for(TimeCache cache : getTimeCaches()) {
+            count += cache.getDropCount();
+        }
+        return count;
+    }
+    
+    public long getCacheSize() {
+        long size = 0;
+        for(TimeCache cache : getTimeCaches()) {
+            size += cache.getSize();
+        }
+        return size;
+    }
+    
+    public String[] getFramePairStatistics() {
+        double secs = (double)(System.nanoTime() - resetTime) / 1E9;
+        ArrayList<String> statistics = new ArrayList<String>();
+        for(TimeCache cache : getTimeCaches()) {
+            statistics.add(cache.getParentFrame().getFrameID() + " -> " + cache.getChildFrame().getFrameID()
+                            + ": " + cache.getInsertCount() + " inserts (" + (cache.getInsertCount() / secs) + "/s), "
+                            + cache.getDropCount() + " dropped, " + cache.getSize() + " cached");
+        }
+        return statistics.toArray(new String[statistics.size()]);
+    }
+    
+    /* **********************************************************************
+     * *                          HELPER METHODS                            *
+     * ********************************************************************** */
+    
+    /**
+     * Returns all time caches of the listener.
+     */
+    private ArrayList<TimeCache> getTimeCaches() {
+        ArrayList<TimeCache> caches = new ArrayList<TimeCache>();
+        for(Shard shard : listener.shards.values()) {
+            for(Frame frame : shard.getFrames()) {
+                caches.addAll(frame.getTimeCaches());
+            }
+        }
+        return caches;
+    }
+    
+    /**
+     * Returns the histogram bucket of the given latency: the position of its highest set bit.
+     */
+    private static int bucket(long latency) {
+        if (latency <= 0) return 0;
+        return 63 - Long.numberOfLeadingZeros(latency);
+    }
+    
+    /**
+     * Sets max to value if value is larger.
+     */
+    private static void updateMax(AtomicLong max, long value) {
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+    
+}
@@ -0,0 +1,91 @@
+/* 
+ * Copyright (c) 2011, Sjoerd van den Dries
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Technische Universiteit Eindhoven nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package tfjava;
+
+/**
+ * JMX management interface of {@link TFMetrics}. Times and durations are in nanoseconds.
+ */
+public interface TFMetricsMBean {
+    
+    /** Returns true if metrics are being collected */
+    public boolean isEnabled();
+    
+    /** Enables or disables collecting metrics */
+    public void setEnabled(boolean enabled);
+    
+    /** Resets all metrics */
+    public void reset();
+    
+    /** Returns the number of lookups */
+    public long getLookupCount();
+    
+    /** Returns the mean lookup latency */
+    public double getLookupLatencyMean();
+    
+    /** Returns an upper bound of the given percentile (0 - 100) of the lookup latency */
+    public long getLookupLatencyPercentile(double percentile);
+    
+    /** Returns the lookup latency histogram; bucket i counts latencies in [2^i, 2^(i+1)) */
+    public long[] getLookupLatencyHistogram();
+    
+    /** Returns the number of search nodes expanded by all lookups */
+    public long getSearchNodeExpansions();
+    
+    /** Returns the maximum number of search nodes expanded by one lookup */
+    public long getSearchNodeExpansionsMax();
+    
+    /** Returns the number of lookups of which all transforms were retrieved at time stamps in the time caches */
+    public long getExactCount();
+    
+    /** Returns the number of lookups that interpolated, but did not extrapolate, transforms */
+    public long getInterpolatedCount();
+    
+    /** Returns the number of lookups that extrapolated a transform from the oldest or newest ones in a time cache */
+    public long getExtrapolatedCount();
+    
+    /** Returns the mean distance in time of the largest extrapolation of the extrapolating lookups */
+    public double getExtrapolationDistanceMean();
+    
+    /** Returns the maximum distance in time of extrapolations */
+    public long getExtrapolationDistanceMax();
+    
+    /** Returns the number of inserted transforms */
+    public long getInsertCount();
+    
+    /** Returns the number of transforms that were dropped because they were too old */
+    public long getDropCount();
+    
+    /** Returns the number of transforms in all time caches */
+    public long getCacheSize();
+    
+    /** Returns, per frame pair, the insert count and rate, the drop count and the cache size */
+    public String[] getFramePairStatistics();
+    
+}
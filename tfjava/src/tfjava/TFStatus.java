@@ -0,0 +1,78 @@
+/* 
+ * Copyright (c) 2011, Sjoerd van den Dries
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Technische Universiteit Eindhoven nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package tfjava;
+
+/**
+ * Result of inserting a transform into, or looking up a transform from, the tf buffer.
+ */
+public enum TFStatus {
+    
+    /** The transform was inserted or found */
+    OK(false, "OK"),
+    /** Insert: frame_id and child_frame_id are the same */
+    SELF_TRANSFORM(true, "TF_SELF_TRANSFORM: ignoring transform because frame_id and child_frame_id are the same"),
+    /** Insert: child_frame_id is not set */
+    NO_CHILD_FRAME_ID(true, "TF_NO_CHILD_FRAME_ID: ignoring transform because child_frame_id is not set"),
+    /** Insert: frame_id is not set */
+    NO_FRAME_ID(true, "TF_NO_FRAME_ID: ignoring transform because frame_id is not set"),
+    /** Insert: the transform is more than MAX_STORAGE_TIME older than the newest transform */
+    OLD_DATA(false, "TF_OLD_DATA: ignoring data from the past"),
+    /** Lookup: the source frame does not exist */
+    NO_SOURCE_FRAME(true, "Cannot transform: source frame does not exist"),
+    /** Lookup: the target frame does not exist */
+    NO_TARGET_FRAME(true, "Cannot transform: target frame does not exist"),
+    /** Lookup: source and target frame are not connected */
+    NOT_CONNECTED(true, "Cannot transform: source and target frame are not connected");
+    
+    /** Whether the status is logged as error (true) or warning (false) */
+    private final boolean error;
+    /** Description used in log messages */
+    private final String description;
+    
+    private TFStatus(boolean error, String description) {
+        this.error = error;
+        this.description = description;
+    }
+    
+    /**
+     * Returns true if this status is reported as error, false if it is reported as warning.
+     */
+    public boolean isError() {
+        return error;
+    }
+    
+    /**
+     * Returns the description of this status, as used in log messages.
+     */
+    public String getDescription() {
+        return description;
+    }
+    
+}
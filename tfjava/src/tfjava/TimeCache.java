@@ -30,33 +30,44 @@
 
 package tfjava;
 
-import java.util.TreeMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
 
 /**
  * Buffer in which transformations from one specific frame to another are stored, ordered in time. 
  * 
+ * Transformations are inserted by one thread at a time, but lookups may run concurrently with inserts;
+ * lookups therefore never assume that an entry they have seen is still in the buffer.
+ * 
  * @author Sjoerd van den Dries
  * @version Feb 28, 2011
  */
 public class TimeCache {
     
     /** Map containing the transformations, ordered in time */
-    protected TreeMap<Long, TransformStorage> storage;
+    protected ConcurrentSkipListMap<Long, TransformStorage> storage;
     /** Maximum storage time, in nanoseconds */
     protected long maxStorageTime;
     /** Reference to the parent frame (source frame) */
     protected Frame parentFrame;
     /** Reference to the child frame (target frame) */
     protected Frame childFrame;
+    /** Metrics of the buffer this cache belongs to */
+    protected TFMetrics metrics;
+    /** Number of inserted transforms, counted while metrics are enabled (only written under the shard lock) */
+    protected volatile long insertCount;
+    /** Number of dropped transforms, counted while metrics are enabled (only written under the shard lock) */
+    protected volatile long dropCount;
     
     /**
      * Class Constructor.
      */
-    public TimeCache(long maxStorageTime, Frame parentFrame, Frame childFrame) {
+    public TimeCache(long maxStorageTime, Frame parentFrame, Frame childFrame, TFMetrics metrics) {
         this.maxStorageTime = maxStorageTime;
-        this.storage = new TreeMap<Long, TransformStorage>();
+        this.storage = new ConcurrentSkipListMap<Long, TransformStorage>();
         this.parentFrame = parentFrame;
         this.childFrame = childFrame;
+        this.metrics = metrics;
     }
     
     /**
@@ -65,10 +76,12 @@ public class TimeCache {
     public boolean insertData(TransformStorage newData) {  
         // check if data is older than first frame in STORAGE - maxStorageTime
         if (!storage.isEmpty() && storage.firstKey() - maxStorageTime > newData.getTimeStamp()) {
+            if (metrics.isEnabled()) dropCount++;
             return false;                              
         }
         
         storage.put(newData.getTimeStamp(), newData);       
+        if (metrics.isEnabled()) insertCount++;
         
         removeOldData(); // same as pruneList in time_cache.h        
         return true;
@@ -83,35 +96,58 @@ public class TimeCache {
      * 
      */
     public TransformStorage getData(long time) {       
+        return getData(time, null);
+    }
+    
+    /**
+     * Like getData(time), but an interpolated transformation is stored in out (unless it is null) instead
+     * of a new object. The result is only valid until out is reused.
+     */
+    public TransformStorage getData(long time, TransformStorage out) {
+        return getData(time, out, null);
+    }
+    
+    /**
+     * Like getData(time, out), and adds how the transformation was retrieved (exact, interpolated or
+     * extrapolated) to retrieval, unless it is null.
+     */
+    public TransformStorage getData(long time, TransformStorage out, TFMetrics.Retrieval retrieval) {
+        Map.Entry<Long, TransformStorage> floor = storage.floorEntry(time);
+        Map.Entry<Long, TransformStorage> ceiling = storage.ceilingEntry(time);
         
-        if (storage.isEmpty()) {
+        if (floor == null && ceiling == null) {
             // TODO: throw error: "Cache for frame " + parentFrame.getFrameID() + " to " + childFrame.getFrameID() + " is empty";
             return null;
-        } else if (storage.size() == 1) {
-            // only one transform in cache, so return that one
-            return storage.firstEntry().getValue();
-        }        
+        }
         
         TransformStorage low, high;        
         
-        if (time < storage.firstKey()) {
+        if (floor == null) {
             // extrapolate back: low = oldest transform
-            //                   high = oldest but one 
-            low = storage.firstEntry().getValue();                     // O(1) (I guess?)
-            high = storage.higherEntry(storage.firstKey()).getValue(); // O(log n) --> can be done in O(1), but how?
-        } else if (time > storage.lastKey()) {
-            // extrapolate forward: low = newest but one
+            //                   high = oldest but one (if any)
+            Map.Entry<Long, TransformStorage> next = storage.higherEntry(ceiling.getKey());
+            low = ceiling.getValue();
+            high = (next != null) ? next.getValue() : low;
+            if (retrieval != null) retrieval.addExtrapolated(ceiling.getKey() - time);
+        } else if (ceiling == null) {
+            // extrapolate forward: low = newest but one (if any)
             //                      high = newest transform        
-            low = storage.lowerEntry(storage.lastKey()).getValue();    // O(log n) --> can be done in O(1), but how?
-            high = storage.lastEntry().getValue();                     // O(1) (I guess?)
+            Map.Entry<Long, TransformStorage> previous = storage.lowerEntry(floor.getKey());
+            high = floor.getValue();
+            low = (previous != null) ? previous.getValue() : high;
+            if (retrieval != null) retrieval.addExtrapolated(time - floor.getKey());
         } else {
             // interpolate: low = newest transform older than time,
             //              high = oldest transform newer than time
-            low = storage.ceilingEntry(time).getValue();
-            high = storage.floorEntry(time).getValue();
+            low = ceiling.getValue();
+            high = floor.getValue();
+            if (retrieval != null) {
+                if (low == high) retrieval.addExact(); else retrieval.addInterpolated();
+            }
         } 
 
-        return TransformStorage.interpolate(low, high, time);
+        // if only one transform is available, interpolate returns that one
+        return TransformStorage.interpolate(low, high, time, out);
     
     } 
     
@@ -123,11 +159,56 @@ public class TimeCache {
         Long floor = storage.floorKey(time);
         Long ceiling = storage.ceilingKey(time);
         
+        if (floor == null && ceiling == null) return Long.MAX_VALUE;
         if (floor == null) return (ceiling - time);
         if (ceiling == null) return (time - floor);
         return Math.min(ceiling - time, time - floor);
     }
     
+    /**
+     * Returns a reference to the parent (i.e., source) frame
+     */
+    public Frame getParentFrame() {
+        return parentFrame;
+    }
+    
+    /**
+     * Returns a reference to the child (i.e., target) frame
+     */
+    public Frame getChildFrame() {
+        return childFrame;
+    }
+    
+    /**
+     * Returns the number of transforms in this buffer.
+     */
+    public int getSize() {
+        return storage.size();
+    }
+    
+    /**
+     * Returns the number of inserted transforms, counted while metrics were enabled.
+     */
+    public long getInsertCount() {
+        return insertCount;
+    }
+    
+    /**
+     * Returns the number of transforms that were dropped because they were too old, counted while
+     * metrics were enabled.
+     */
+    public long getDropCount() {
+        return dropCount;
+    }
+    
+    /**
+     * Resets the insert and drop counters.
+     */
+    public void resetCounters() {
+        insertCount = 0;
+        dropCount = 0;
+    }
+    
     /**
      * Removes all transforms that are more than maxStorageTime older than the newest transform.
      */
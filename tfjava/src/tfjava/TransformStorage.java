@@ -74,6 +74,14 @@ public class TransformStorage {
      * extrapolation from t1 and t2.
      */    
     public static TransformStorage interpolate(TransformStorage t1, TransformStorage t2, long time) {
+        return interpolate(t1, t2, time, null);
+    }
+    
+    /**
+     * Like interpolate(t1, t2, time), but stores an interpolated result in out instead of a new object,
+     * unless out is null.
+     */    
+    public static TransformStorage interpolate(TransformStorage t1, TransformStorage t2, long time, TransformStorage out) {
         long time1 = t1.getTimeStamp();
         long time2 = t2.getTimeStamp();
           
@@ -85,17 +93,23 @@ public class TransformStorage {
         //Calculate the ratio
         double ratio = (double)(time - time1) / (time2 - time1);        
                 
+        if (out == null) {
+            out = new TransformStorage(new Vector3d(), new Quat4d(), time, t1.parentFrame, t1.childFrame);
+        } else {
+            out.timeStamp = time;
+            out.parentFrame = t1.parentFrame;
+            out.childFrame = t1.childFrame;
+        }
+        
         // interpolate translation
-        Vector3d transRet = new Vector3d();
-        transRet.interpolate(t1.getTranslation(), t2.getTranslation(), ratio); 
+        out.translation.interpolate(t1.getTranslation(), t2.getTranslation(), ratio); 
         
         // interpolate rotation
-        Quat4d rotRet = new Quat4d();
-        rotRet.interpolate(t1.getRotation(), t2.getRotation(), ratio);
+        out.rotation.interpolate(t1.getRotation(), t2.getRotation(), ratio);
         
         // original tf implementation (see cache.cpp) does not 'interpolate' timestamp. I do.
                 
-        return new TransformStorage(transRet, rotRet, time, t1.parentFrame, t1.childFrame);
+        return out;
     }       
     
     /**
@@ -29,6 +29,7 @@ package tfjava;
  */
 
 import ros.communication.Time;
+import ros.communication.TimeUnit;
 
 import javax.vecmath.Point3d;
 import javax.vecmath.Matrix4d;
@@ -61,7 +62,7 @@ public class Utils {
 	 * @return Time stamp in seconds
 	 */
 	public static double getTimeNowSecs() {
-	    return (double)Time.now().totalNsecs() / 1000000000;
+	    return TimeUnit.toSeconds(Time.nowNsecs());
 	}
 
 	
@@ -90,9 +91,7 @@ public class Utils {
     public static StampedTransform poseArrayToTF(float[] p, String frameId, String childFrameId) {
 
         Matrix4d mat = new Matrix4d();
-        for(int i=0;i<4;i++)
-            for(int j=0;j<4;j++)
-                mat.setElement(i, j, p[4*i+j]);
+        poseArrayToMatrix4d(p, 0, mat);
         
         return new StampedTransform(mat, 
                                     secondsToRosTime(getTimeNowSecs()), 
@@ -160,9 +159,7 @@ public class Utils {
         Stamped<Matrix4d> mat = new Stamped<Matrix4d>();
         
         mat.data = new Matrix4d();
-        for(int i=0;i<4;i++)
-            for(int j=0;j<4;j++)
-                mat.data.setElement(i, j, m[4*i+j]);
+        poseArrayToMatrix4d(m, 0, mat.data);
         
         mat.frameID = frameID;
         mat.timeStamp = secondsToRosTime(secs);
@@ -170,6 +167,48 @@ public class Utils {
         return mat;
     }
     
+    /**
+     * Copy the 16 elements of a row-based pose array, starting at offset, into a matrix
+     * 
+     * @param p       Array containing the pose matrix (row-based)
+     * @param offset  Index of the first matrix element in p
+     * @param out     Matrix that is overwritten with the pose
+     */
+    public static void poseArrayToMatrix4d(float[] p, int offset, Matrix4d out) {
+        out.m00 = p[offset];      out.m01 = p[offset + 1];  out.m02 = p[offset + 2];  out.m03 = p[offset + 3];
+        out.m10 = p[offset + 4];  out.m11 = p[offset + 5];  out.m12 = p[offset + 6];  out.m13 = p[offset + 7];
+        out.m20 = p[offset + 8];  out.m21 = p[offset + 9];  out.m22 = p[offset + 10]; out.m23 = p[offset + 11];
+        out.m30 = p[offset + 12]; out.m31 = p[offset + 13]; out.m32 = p[offset + 14]; out.m33 = p[offset + 15];
+    }
+    
+    /**
+     * Copy the 16 elements of a row-based pose array, starting at offset, into a matrix
+     * 
+     * @param p       Array containing the pose matrix (row-based)
+     * @param offset  Index of the first matrix element in p
+     * @param out     Matrix that is overwritten with the pose
+     */
+    public static void poseArrayToMatrix4d(double[] p, int offset, Matrix4d out) {
+        out.m00 = p[offset];      out.m01 = p[offset + 1];  out.m02 = p[offset + 2];  out.m03 = p[offset + 3];
+        out.m10 = p[offset + 4];  out.m11 = p[offset + 5];  out.m12 = p[offset + 6];  out.m13 = p[offset + 7];
+        out.m20 = p[offset + 8];  out.m21 = p[offset + 9];  out.m22 = p[offset + 10]; out.m23 = p[offset + 11];
+        out.m30 = p[offset + 12]; out.m31 = p[offset + 13]; out.m32 = p[offset + 14]; out.m33 = p[offset + 15];
+    }
+    
+    /**
+     * Copy the elements of a matrix into a row-based pose array, starting at offset
+     * 
+     * @param m       Matrix containing the pose
+     * @param out     Array that receives the 16 matrix elements (row-based)
+     * @param offset  Index in out of the first matrix element
+     */
+    public static void matrix4dToPoseArray(Matrix4d m, double[] out, int offset) {
+        out[offset]      = m.m00; out[offset + 1]  = m.m01; out[offset + 2]  = m.m02; out[offset + 3]  = m.m03;
+        out[offset + 4]  = m.m10; out[offset + 5]  = m.m11; out[offset + 6]  = m.m12; out[offset + 7]  = m.m13;
+        out[offset + 8]  = m.m20; out[offset + 9]  = m.m21; out[offset + 10] = m.m22; out[offset + 11] = m.m23;
+        out[offset + 12] = m.m30; out[offset + 13] = m.m31; out[offset + 14] = m.m32; out[offset + 15] = m.m33;
+    }
+    
     /**
      * Create an identity matrix Stamped<Matrix4d>
      * 
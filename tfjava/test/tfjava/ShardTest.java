@@ -0,0 +1,104 @@
+/* 
+ * Copyright (c) 2011, Sjoerd van den Dries
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Technische Universiteit Eindhoven nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package tfjava;
+
+import ros.communication.Time;
+
+import ros.pkg.geometry_msgs.msg.TransformStamped;
+
+import javax.vecmath.Matrix4d;
+
+/**
+ * Tests the partitioning of the buffer into shards by namespace, on a listener that is not connected
+ * to ROS. Two robots, "/robot1" and "/robot2", are localized in the global "/map" frame; after removing
+ * the frames of one robot, lookups through the global frame must still work for the other.
+ */
+public class ShardTest {
+    
+    public static void main(String[] args) {
+        check(TFListener.getNamespace("/robot1/base_link").equals("/robot1"), "namespace of /robot1/base_link");
+        check(TFListener.getNamespace("/robot1/arm/hand").equals("/robot1"), "namespace of /robot1/arm/hand");
+        check(TFListener.getNamespace("/map").equals(""), "namespace of /map");
+        
+        TFListener listener = new TFListener(false);
+        for(int robot = 1; robot <= 2; robot++) {
+            String prefix = "/robot" + robot;
+            check(listener.setTransform(transform("/map", prefix + "/odom", robot, 0)), "insert " + prefix + "/odom");
+            check(listener.setTransform(transform(prefix + "/odom", prefix + "/base_link", 0, 1)), "insert " + prefix + "/base_link");
+        }
+        check(listener.getNamespaces().size() == 3, "namespaces after insert: " + listener.getNamespaces());
+        check(listener.getNamespaces().contains("") && listener.getNamespaces().contains("/robot1")
+                  && listener.getNamespaces().contains("/robot2"), "namespaces after insert: " + listener.getNamespaces());
+        
+        // from the base of robot1 (at (1, 1)) to the base of robot2 (at (2, 1)), through /map
+        Matrix4d m = new Matrix4d();
+        Time time = new Time(1, 0);
+        check(listener.lookupTransform("/robot2/base_link", "/robot1/base_link", time, m) == TFStatus.OK,
+              "lookup from robot1 to robot2");
+        check(Math.abs(m.m03 + 1) < 1E-9 && Math.abs(m.m13) < 1E-9, "transform from robot1 to robot2: " + m);
+        
+        // remove robot1; the namespace may be given without leading slash
+        check(listener.removeNamespace("robot1"), "remove robot1");
+        check(!listener.removeNamespace("/robot1"), "remove robot1 twice");
+        check(listener.getNamespaces().size() == 2 && !listener.getNamespaces().contains("/robot1"),
+              "namespaces after remove: " + listener.getNamespaces());
+        check(listener.lookupTransform("/robot2/base_link", "/robot1/base_link", time, m) == TFStatus.NO_SOURCE_FRAME,
+              "lookup from removed robot1");
+        check(listener.lookupTransform("/map", "/robot2/base_link", time, m) == TFStatus.OK, "lookup from robot2 to map");
+        check(Math.abs(m.m03 - 2) < 1E-9 && Math.abs(m.m13 - 1) < 1E-9, "transform from robot2 to map: " + m);
+        
+        // robot1 can be added again
+        check(listener.setTransform(transform("/map", "/robot1/odom", 3, 0)), "insert /robot1/odom again");
+        check(listener.lookupTransform("/robot2/odom", "/robot1/odom", time, m) == TFStatus.OK, "lookup from new robot1");
+        check(Math.abs(m.m03 - 1) < 1E-9, "transform from new robot1 to robot2: " + m);
+        
+        System.out.println("Shard tests passed");
+    }
+    
+    /** Returns a transform from parent to child frame at time 1s, which translates by (x, y) */
+    private static TransformStamped transform(String parentFrameID, String childFrameID, double x, double y) {
+        TransformStamped tf = new TransformStamped();
+        tf.header.frame_id = parentFrameID;
+        tf.header.stamp = new Time(1, 0);
+        tf.child_frame_id = childFrameID;
+        tf.transform.translation.x = x;
+        tf.transform.translation.y = y;
+        tf.transform.rotation.w = 1;
+        return tf;
+    }
+    
+    private static void check(boolean condition, String failure) {
+        if (!condition) {
+            System.err.println("FAILED: " + failure);
+            System.exit(1);
+        }
+    }
+}
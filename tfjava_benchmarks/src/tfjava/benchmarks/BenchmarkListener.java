@@ -0,0 +1,168 @@
+/* 
+ * Copyright (c) 2011, Sjoerd van den Dries
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Technische Universiteit Eindhoven nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package tfjava.benchmarks;
+
+import tfjava.TFListener;
+
+import ros.communication.Time;
+
+import ros.pkg.geometry_msgs.msg.TransformStamped;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Listener that is not connected to ROS, and whose buffer is filled with a synthetic tf tree.
+ * 
+ * The tree has a single root frame, and every frame above the given depth has fanOut child frames.
+ * Transforms for all edges of the tree are inserted at the same rate, so the time stamps in all
+ * time caches are aligned. Each edge has its own TransformStamped message, which is reused for
+ * every insert on that edge.
+ */
+public class BenchmarkListener extends TFListener {
+    
+    /** ID of the root frame of the tree */
+    public static final String ROOT_FRAME_ID = "/root";
+    
+    /** One message per edge of the tree, indexed in breadth-first order */
+    protected ArrayList<TransformStamped> edges;
+    /** ID's of all leaf frames of the tree */
+    protected ArrayList<String> leafFrameIDs;
+    /** Time between two consecutive transforms on an edge, in nanoseconds */
+    protected long period;
+    /** Time stamp of the newest transforms in the buffer, in nanoseconds */
+    protected long newestTime;
+    
+    /**
+     * Class constructor. Creates a tree of the given depth and fan-out, with transforms
+     * inserted at the given rate (in Hz). The buffer is still empty; see {@link #fill}.
+     */
+    public BenchmarkListener(int depth, int fanOut, double rate) {
+        super(false);
+        
+        this.period = (long)(1E9 / rate);
+        this.edges = new ArrayList<TransformStamped>();
+        this.leafFrameIDs = new ArrayList<String>();
+        
+        // create the tree level by level
+        List<String> level = new ArrayList<String>();
+        level.add(ROOT_FRAME_ID);
+        for(int d = 0; d < depth; d++) {
+            List<String> nextLevel = new ArrayList<String>();
+            for(String parentFrameID : level) {
+                for(int i = 0; i < fanOut; i++) {
+                    String childFrameID = parentFrameID + "_" + i;
+                    TransformStamped tf = new TransformStamped();
+                    tf.header.frame_id = parentFrameID;
+                    tf.child_frame_id = childFrameID;
+                    edges.add(tf);
+                    nextLevel.add(childFrameID);
+                }
+            }
+            level = nextLevel;
+        }
+        leafFrameIDs.addAll(level);
+    }
+    
+    /**
+     * Fills the buffer with transforms on all edges, at the configured rate, for the last
+     * MAX_STORAGE_TIME before endTime (in nanoseconds).
+     */
+    public void fill(long endTime) {
+        long startTime = endTime - (MAX_STORAGE_TIME / period) * period;
+        for(long time = startTime; time <= endTime; time += period) {
+            for(int i = 0; i < edges.size(); i++) {
+                insert(i, time);
+            }
+        }
+    }
+    
+    /**
+     * Inserts a synthetic transform at the given time (in nanoseconds) on the edge with the given index.
+     * Returns false if the transform was rejected by the buffer.
+     */
+    public boolean insert(int edgeIndex, long time) {
+        TransformStamped tf = edges.get(edgeIndex);
+        
+        // slowly moving translation and rotation around the z-axis, different for each edge
+        double phase = edgeIndex + (double)time / 1E9;
+        double angle = 0.5 * Math.sin(phase);        
+        tf.transform.translation.x = 1.0 + 0.1 * Math.cos(phase);
+        tf.transform.translation.y = 0.1 * Math.sin(phase);
+        tf.transform.translation.z = 0.01 * edgeIndex;
+        tf.transform.rotation.x = 0;
+        tf.transform.rotation.y = 0;
+        tf.transform.rotation.z = Math.sin(angle / 2);
+        tf.transform.rotation.w = Math.cos(angle / 2);
+        
+        tf.header.stamp.secs = (int)(time / 1000000000L);
+        tf.header.stamp.nsecs = (int)(time % 1000000000L);
+        
+        if (time > newestTime) newestTime = time;
+        return setTransform(tf);
+    }
+    
+    /**
+     * Returns the number of edges in the tree.
+     */
+    public int getNumEdges() {
+        return edges.size();
+    }
+    
+    /**
+     * Returns the ID's of all leaf frames of the tree.
+     */
+    public List<String> getLeafFrameIDs() {
+        return leafFrameIDs;
+    }
+    
+    /**
+     * Returns the time between two consecutive transforms on an edge, in nanoseconds.
+     */
+    public long getPeriod() {
+        return period;
+    }
+    
+    /**
+     * Returns the time stamp of the newest transforms in the buffer, in nanoseconds.
+     */
+    public long getNewestTime() {
+        return newestTime;
+    }
+    
+    /**
+     * Converts a time in nanoseconds to a Time object.
+     */
+    public static Time toTime(long time) {
+        return Time.fromNsecs(time);
+    }
+    
+}
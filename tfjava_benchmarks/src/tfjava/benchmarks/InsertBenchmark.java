@@ -0,0 +1,103 @@
+/* 
+ * Copyright (c) 2011, Sjoerd van den Dries
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Technische Universiteit Eindhoven nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package tfjava.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark for inserting transforms in a filled buffer.
+ * 
+ * Every invocation inserts the next transform on the next edge of the tree, so all time caches keep
+ * advancing at the configured rate. Since the buffer already holds MAX_STORAGE_TIME of data, each
+ * insert also prunes the oldest transform of its time cache, as it would in a running system.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g"})
+public class InsertBenchmark {
+    
+    /** Time stamp of the newest transforms after filling the buffer, in nanoseconds */
+    private static final long END_TIME = 1000000000000L;
+    
+    /** Depth of the tf tree */
+    @Param({"2", "6"})
+    public int depth;
+    /** Number of child frames of each non-leaf frame */
+    @Param({"1", "2"})
+    public int fanOut;
+    /** Insert rate of the transforms on every edge, in Hz */
+    @Param({"10", "100", "1000"})
+    public double rate;
+    
+    private BenchmarkListener listener;
+    
+    private int edge;
+    private long time;
+    
+    @Setup
+    public void setup() {
+        listener = new BenchmarkListener(depth, fanOut, rate);
+        listener.fill(END_TIME);
+        
+        edge = 0;
+        time = END_TIME + listener.getPeriod();
+    }
+    
+    /**
+     * Inserts the next transform in the buffer.
+     */
+    @Benchmark
+    public boolean insert() {
+        boolean inserted = listener.insert(edge, time);
+        
+        if (++edge == listener.getNumEdges()) {
+            edge = 0;
+            time += listener.getPeriod();
+        }
+        return inserted;
+    }
+    
+}
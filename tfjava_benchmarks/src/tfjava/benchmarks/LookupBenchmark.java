@@ -0,0 +1,190 @@
+/* 
+ * Copyright (c) 2011, Sjoerd van den Dries
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Technische Universiteit Eindhoven nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package tfjava.benchmarks;
+
+import tfjava.Stamped;
+import tfjava.StampedTransform;
+
+import ros.communication.Time;
+
+import javax.vecmath.Point3d;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for transform lookups on a filled buffer.
+ * 
+ * The query time of each lookup depends on the workload: 'exact' queries hit the time stamp of a stored
+ * transform, 'interpolate' queries lie halfway between two stored transforms and 'extrapolate' queries
+ * lie up to two periods after the newest stored transforms. Queries are precomputed in a ring, so that
+ * consecutive invocations do not repeat the same lookup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g"})
+public class LookupBenchmark {
+    
+    /** Number of precomputed queries */
+    private static final int NUM_QUERIES = 1024;
+    /** Time stamp of the newest transforms in the buffer, in nanoseconds */
+    private static final long END_TIME = 1000000000000L;
+    
+    /** Depth of the tf tree */
+    @Param({"2", "6"})
+    public int depth;
+    /** Number of child frames of each non-leaf frame */
+    @Param({"1", "2"})
+    public int fanOut;
+    /** Insert rate of the transforms on every edge, in Hz */
+    @Param({"10", "100", "1000"})
+    public double rate;
+    /** Position of the query times relative to the stored transforms */
+    @Param({"exact", "interpolate", "extrapolate"})
+    public String workload;
+    
+    private BenchmarkListener listener;
+    
+    private String[] sourceFrameIDs;
+    private String[] targetFrameIDs;
+    private Time[] sourceTimes;
+    private Time[] targetTimes;
+    private Stamped<Point3d>[] points;
+    private Stamped<Point3d> pointOut;
+    private int next;
+    
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        listener = new BenchmarkListener(depth, fanOut, rate);
+        listener.fill(END_TIME);
+        
+        List<String> leaves = listener.getLeafFrameIDs();
+        long period = listener.getPeriod();
+        long numStored = BenchmarkListener.MAX_STORAGE_TIME / period;
+        Random random = new Random(42);
+        
+        sourceFrameIDs = new String[NUM_QUERIES];
+        targetFrameIDs = new String[NUM_QUERIES];
+        sourceTimes = new Time[NUM_QUERIES];
+        targetTimes = new Time[NUM_QUERIES];
+        points = new Stamped[NUM_QUERIES];
+        pointOut = new Stamped<Point3d>(new Point3d(), null, null);
+        
+        for(int i = 0; i < NUM_QUERIES; i++) {
+            // pick two leaves; with a fan-out larger than one, the path between them passes the root
+            sourceFrameIDs[i] = leaves.get(random.nextInt(leaves.size()));
+            targetFrameIDs[i] = leaves.get(random.nextInt(leaves.size()));
+            if (sourceFrameIDs[i] == targetFrameIDs[i]) targetFrameIDs[i] = BenchmarkListener.ROOT_FRAME_ID;
+            
+            sourceTimes[i] = BenchmarkListener.toTime(queryTime(random, period, numStored));
+            targetTimes[i] = BenchmarkListener.toTime(queryTime(random, period, numStored));
+            
+            Point3d p = new Point3d(random.nextDouble(), random.nextDouble(), random.nextDouble());
+            points[i] = new Stamped<Point3d>(p, sourceFrameIDs[i], sourceTimes[i]);
+        }
+    }
+    
+    /**
+     * Returns a random query time (in nanoseconds) for the configured workload.
+     */
+    private long queryTime(Random random, long period, long numStored) {
+        if (workload.equals("extrapolate")) {
+            return END_TIME + 1 + (long)(random.nextDouble() * 2 * period);
+        }
+        
+        long time = END_TIME - (1 + (long)(random.nextDouble() * (numStored - 1))) * period;
+        if (workload.equals("interpolate")) {
+            time += period / 2;
+        }
+        return time;
+    }
+    
+    private int nextQuery() {
+        next = (next + 1) & (NUM_QUERIES - 1);
+        return next;
+    }
+    
+    /**
+     * Looks up the transform from a leaf frame to the root frame.
+     */
+    @Benchmark
+    public StampedTransform lookupToRoot() {
+        int i = nextQuery();
+        return listener.lookupTransform(BenchmarkListener.ROOT_FRAME_ID, sourceFrameIDs[i], sourceTimes[i]);
+    }
+    
+    /**
+     * Looks up the transform between two leaf frames.
+     */
+    @Benchmark
+    public StampedTransform lookupBetweenLeaves() {
+        int i = nextQuery();
+        return listener.lookupTransform(targetFrameIDs[i], sourceFrameIDs[i], sourceTimes[i]);
+    }
+    
+    /**
+     * Looks up the transform between two leaf frames at different times, using the root as fixed frame.
+     */
+    @Benchmark
+    public StampedTransform lookupWithFixedFrame() {
+        int i = nextQuery();
+        return listener.lookupTransform(targetFrameIDs[i], targetTimes[i], sourceFrameIDs[i], sourceTimes[i],
+                                        BenchmarkListener.ROOT_FRAME_ID);
+    }
+    
+    /**
+     * Transforms a point from a leaf frame to the root frame.
+     */
+    @Benchmark
+    public Stamped<Point3d> transformPoint() {
+        int i = nextQuery();
+        listener.transformPoint(BenchmarkListener.ROOT_FRAME_ID, points[i], pointOut);
+        return pointOut;
+    }
+    
+}